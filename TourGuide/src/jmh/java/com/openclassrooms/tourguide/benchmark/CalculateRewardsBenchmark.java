@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+/**
+ * Full reward pass over a user history, the reward points cache is warm after the first iteration
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalculateRewardsBenchmark {
+	@Param({"1", "10", "100", "1000"})
+	public int historyLength;
+
+	@Param({"false", "true"})
+	public boolean vectorizedProximity;
+
+	private RewardsService rewardsService;
+	private UUID userId;
+	private List<VisitedLocation> history;
+
+	@Setup
+	public void setup() {
+		Services services = new Services(0);
+		rewardsService = services.rewardsService;
+		rewardsService.setVectorizedProximity(vectorizedProximity);
+		userId = UUID.randomUUID();
+		history = new ArrayList<>(historyLength);
+		for (int i = 0; i < historyLength; i++) {
+			history.add(services.gpsUtil.getUserLocation(userId));
+		}
+	}
+
+	@Benchmark
+	public User calculateRewards() {
+		// a fresh user each time, otherwise the incremental pass has nothing left to evaluate
+		User user = new User(userId, "benchmarkUser", "000", "benchmarkUser@tourGuide.com");
+		history.forEach(user::addToVisitedLocations);
+		rewardsService.calculateRewards(user);
+		return user;
+	}
+}
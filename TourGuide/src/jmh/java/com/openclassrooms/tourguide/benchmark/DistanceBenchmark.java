@@ -0,0 +1,56 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistanceBenchmark {
+	private RewardsService rewardsService;
+	private Location paris;
+	private Location newYork;
+	private Attraction attraction;
+
+	@Setup
+	public void setup() {
+		rewardsService = new Services(0).rewardsService;
+		paris = new Location(48.8566, 2.3522);
+		newYork = new Location(40.7128, -74.0060);
+		attraction = rewardsService.getAttractionIndex().getAttractions().get(0);
+	}
+
+	@Benchmark
+	public double getDistance() {
+		return rewardsService.getDistance(paris, newYork);
+	}
+
+	// distance from the precomputed vector of the attraction
+	@Benchmark
+	public double indexedDistance() {
+		return rewardsService.getAttractionIndex().distance(attraction, paris);
+	}
+
+	// chord comparison against the precomputed vector, no asin
+	@Benchmark
+	public boolean isWithinAttractionProximity() {
+		return rewardsService.isWithinAttractionProximity(attraction, paris);
+	}
+}
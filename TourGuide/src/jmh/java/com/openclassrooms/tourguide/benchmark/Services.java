@@ -0,0 +1,29 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.time.Duration;
+
+import com.openclassrooms.tourguide.client.RewardCentralClient;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.util.InternalTestHelper;
+
+/**
+ * Services wired on the latency free stubs, so that benchmarks measure TourGuide code only
+ */
+final class Services {
+	final StubGpsUtil gpsUtil = new StubGpsUtil();
+	final TourGuideExecutor executor = TourGuideExecutor.defaults();
+	final RewardsService rewardsService;
+	final TourGuideService tourGuideService;
+
+	Services(int internalUsers) {
+		// no batch window : lookups are dispatched at once instead of waiting for the batch
+		RewardCentralClient rewardCentralClient = new RewardCentralClient(new StubRewardCentral(), executor, Duration.ZERO);
+		rewardsService = new RewardsService(gpsUtil, rewardCentralClient, executor,
+				RewardsService.DEFAULT_REWARD_CACHE_SIZE, RewardsService.DEFAULT_REWARD_CACHE_TTL);
+		InternalTestHelper.setInternalUserNumber(internalUsers);
+		tourGuideService = new TourGuideService(gpsUtil, rewardsService, executor, new StubTripPricer());
+		tourGuideService.tracker.stopTracking();
+	}
+}
@@ -0,0 +1,30 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * GpsUtil without the simulated network latency
+ */
+public class StubGpsUtil extends GpsUtil {
+	private final List<Attraction> attractions = List.copyOf(super.getAttractions());
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return new VisitedLocation(userId,
+				new Location(random.nextDouble(-85, 85), random.nextDouble(-180, 180)), new Date());
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return attractions;
+	}
+}
@@ -0,0 +1,16 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.UUID;
+
+import rewardCentral.RewardCentral;
+
+/**
+ * RewardCentral without the simulated network latency, points are stable per (attraction, user)
+ */
+public class StubRewardCentral extends RewardCentral {
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		return 1 + Math.floorMod(attractionId.hashCode() * 31 + userId.hashCode(), 1000);
+	}
+}
@@ -0,0 +1,26 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+
+/**
+ * TripPricer without the simulated network latency
+ */
+public class StubTripPricer extends TripPricer {
+	private static final int PROVIDERS_PER_ATTRACTION = 5;
+
+	@Override
+	public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+			int rewardsPoints) {
+		List<Provider> providers = new ArrayList<>(PROVIDERS_PER_ATTRACTION);
+		for (int i = 0; i < PROVIDERS_PER_ATTRACTION; i++) {
+			double price = Math.max(0, (adults + children * 0.5) * nightsStay * (100 + i * 10) - rewardsPoints);
+			providers.add(new Provider(attractionId, "provider" + i, price));
+		}
+		return providers;
+	}
+}
@@ -0,0 +1,53 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.TourGuideService;
+
+/**
+ * One tracking pass over every user, histories grow up to their cap across iterations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrackAllUsersBenchmark {
+	@Param({"1000", "10000"})
+	public int userCount;
+
+	private TourGuideService tourGuideService;
+	private List<User> users;
+
+	@Setup
+	public void setup() {
+		tourGuideService = new Services(userCount).tourGuideService;
+		users = tourGuideService.getAllUsers();
+	}
+
+	@TearDown
+	public void tearDown() {
+		tourGuideService.getExecutor().shutdown();
+	}
+
+	@Benchmark
+	public void trackAllUsersLocations() {
+		tourGuideService.trackAllUsersLocations(users);
+	}
+}
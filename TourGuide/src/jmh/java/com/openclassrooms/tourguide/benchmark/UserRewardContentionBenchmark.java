@@ -0,0 +1,54 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.User;
+
+/**
+ * Concurrent reward passes adding rewards to the same user.
+ * Once every attraction is rewarded the operations only hit the duplicate check.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class UserRewardContentionBenchmark {
+	private User user;
+	private List<Attraction> attractions;
+	private VisitedLocation visitedLocation;
+
+	@Setup
+	public void setup() {
+		UUID userId = UUID.randomUUID();
+		user = new User(userId, "benchmarkUser", "000", "benchmarkUser@tourGuide.com");
+		attractions = new StubGpsUtil().getAttractions();
+		visitedLocation = new VisitedLocation(userId, attractions.get(0), new Date());
+	}
+
+	@Benchmark
+	public void addUserReward() {
+		Attraction attraction = attractions.get(ThreadLocalRandom.current().nextInt(attractions.size()));
+		user.addUserReward(new User.UserReward(visitedLocation, attraction, 1));
+	}
+}
@@ -0,0 +1,59 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.VisitedLocation;
+import tripPricer.Provider;
+import com.openclassrooms.tourguide.domain.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.TourGuideService;
+
+/**
+ * Per user endpoints of TourGuideService
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+	private TourGuideService tourGuideService;
+	private User user;
+	private VisitedLocation visitedLocation;
+
+	@Setup
+	public void setup() {
+		tourGuideService = new Services(1).tourGuideService;
+		user = tourGuideService.getAllUsers().get(0);
+		visitedLocation = user.getLastVisitedLocation();
+	}
+
+	@TearDown
+	public void tearDown() {
+		tourGuideService.getExecutor().shutdown();
+	}
+
+	@Benchmark
+	public List<NearbyAttractionDTO> getNearByAttractions() {
+		return tourGuideService.getNearByAttractions(visitedLocation);
+	}
+
+	@Benchmark
+	public List<Provider> getTripDeals() {
+		return tourGuideService.getTripDeals(user);
+	}
+}
@@ -0,0 +1,154 @@
+package com.openclassrooms.tourguide.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.concurrent.Downstream;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.service.RewardKey;
+
+/**
+ * Request coalescing front of RewardCentral.
+ * Concurrent lookups of the same (attraction, user) pair share one in-flight call, each caller gets its own
+ * dependent future : cancelling or completing it leaves the other callers and the call untouched.
+ * With a batch window, the lookup opening a window is dispatched at once and the lookups queued during
+ * the window are dispatched together when it ends. RewardCentral has no bulk call, so a batch is fanned out
+ * as one group of calls : the default window is zero, every lookup is dispatched at once.
+ */
+public class RewardCentralClient {
+	public static final Duration DEFAULT_BATCH_WINDOW = Duration.ZERO;
+	// one timer thread for the windows of every client
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "reward-central-batcher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final RewardCentral rewardCentral;
+	private final TourGuideExecutor executor;
+	private final long batchWindowNanos;
+	private final ConcurrentMap<RewardKey, CompletableFuture<Integer>> inFlight = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<PendingLookup> pending = new ConcurrentLinkedQueue<>();
+	// set while a window is open
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final LongAdder coalescedLookups = new LongAdder();
+	private final LongAdder dispatchedLookups = new LongAdder();
+	private final LongAdder dispatchedBatches = new LongAdder();
+
+	public RewardCentralClient(RewardCentral rewardCentral, TourGuideExecutor executor, Duration batchWindow) {
+		this.rewardCentral = rewardCentral;
+		this.executor = executor;
+		this.batchWindowNanos = batchWindow.toNanos();
+	}
+
+	public CompletableFuture<Integer> getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		RewardKey key = RewardKey.of(attractionId, userId);
+		CompletableFuture<Integer> lookup = new CompletableFuture<>();
+		CompletableFuture<Integer> existing = inFlight.putIfAbsent(key, lookup);
+		if (existing != null) {
+			coalescedLookups.increment();
+			return existing.copy();
+		}
+
+		PendingLookup pendingLookup = new PendingLookup(key, lookup);
+		if (batchWindowNanos <= 0) {
+			dispatch(List.of(pendingLookup));
+			return lookup.copy();
+		}
+		pending.add(pendingLookup);
+		if (flushScheduled.compareAndSet(false, true)) {
+			// no window open : nothing is waiting to be batched with this lookup, it goes right away
+			dispatchPending();
+			SCHEDULER.schedule(this::flush, batchWindowNanos, TimeUnit.NANOSECONDS);
+		}
+		return lookup.copy();
+	}
+
+	private void flush() {
+		// cleared before draining, a lookup queued meanwhile opens the next window
+		flushScheduled.set(false);
+		dispatchPending();
+	}
+
+	private void dispatchPending() {
+		List<PendingLookup> batch = new ArrayList<>();
+		PendingLookup lookup;
+		while ((lookup = pending.poll()) != null) {
+			batch.add(lookup);
+		}
+		if (!batch.isEmpty()) {
+			dispatch(batch);
+		}
+	}
+
+	private void dispatch(List<PendingLookup> batch) {
+		dispatchedBatches.increment();
+		for (PendingLookup lookup : batch) {
+			dispatchedLookups.increment();
+			try {
+				executor.runAsync(() -> {
+					try {
+						int points = executor.call(Downstream.REWARD_CENTRAL, () ->
+								rewardCentral.getAttractionRewardPoints(lookup.key.attractionId(), lookup.key.userId()));
+						complete(lookup, points, null);
+					} catch (Throwable e) {
+						complete(lookup, null, e);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				complete(lookup, null, e);
+			}
+		}
+	}
+
+	// leaves the in-flight map first : a caller woken by the result and asking again gets a new lookup
+	private void complete(PendingLookup lookup, Integer points, Throwable error) {
+		inFlight.remove(lookup.key, lookup.future);
+		if (error == null) {
+			lookup.future.complete(points);
+		} else {
+			lookup.future.completeExceptionally(error);
+		}
+	}
+
+	/**
+	 * @return lookups answered by an already in-flight call
+	 */
+	public long getCoalescedLookups() {
+		return coalescedLookups.sum();
+	}
+
+	/**
+	 * @return lookups actually sent to RewardCentral
+	 */
+	public long getDispatchedLookups() {
+		return dispatchedLookups.sum();
+	}
+
+	public long getDispatchedBatches() {
+		return dispatchedBatches.sum();
+	}
+
+	/**
+	 * Dispatches the lookups still queued, the scheduler is shared by every client and keeps running
+	 */
+	public void shutdown() {
+		dispatchPending();
+	}
+
+	private record PendingLookup(RewardKey key, CompletableFuture<Integer> future) {
+	}
+}
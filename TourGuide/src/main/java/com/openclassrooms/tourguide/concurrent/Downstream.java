@@ -0,0 +1,23 @@
+package com.openclassrooms.tourguide.concurrent;
+
+/**
+ * External dependencies whose concurrent calls are capped by TourGuideExecutor
+ */
+public enum Downstream {
+	GPS_UTIL("gpsUtil.getUserLocation"),
+	REWARD_CENTRAL("rewardCentral.getAttractionRewardPoints"),
+	TRIP_PRICER("tripPricer.getPrice");
+
+	private final String operation;
+
+	Downstream(String operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * @return the remote call, used to tag its metrics
+	 */
+	public String getOperation() {
+		return operation;
+	}
+}
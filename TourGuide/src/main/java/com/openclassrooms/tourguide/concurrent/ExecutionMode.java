@@ -0,0 +1,11 @@
+package com.openclassrooms.tourguide.concurrent;
+
+/**
+ * How TourGuideExecutor runs its tasks
+ */
+public enum ExecutionMode {
+	/** one virtual thread per task, blocking calls do not hold a platform thread */
+	VIRTUAL_THREADS,
+	/** fixed size ForkJoinPool, the former behaviour */
+	FORK_JOIN
+}
@@ -0,0 +1,225 @@
+package com.openclassrooms.tourguide.concurrent;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Executor shared by the services and the tracker.
+ * Concurrency towards each downstream dependency is capped by its own semaphore,
+ * so the executor itself does not need a hand picked pool size.
+ * Downstream calls are timed, and permit waiters gauged, once bound to a meter registry.
+ */
+public class TourGuideExecutor implements MeterBinder {
+	public static final int DEFAULT_FORK_JOIN_PARALLELISM = 64;
+	public static final Map<Downstream, Integer> DEFAULT_PERMITS = Map.of(
+			Downstream.GPS_UTIL, 1000,
+			Downstream.REWARD_CENTRAL, 5000,
+			Downstream.TRIP_PRICER, 1000);
+
+	private final ExecutionMode mode;
+	private final int forkJoinParallelism;
+	private final ExecutorService executorService;
+	private final Map<Downstream, Semaphore> permits = new EnumMap<>(Downstream.class);
+	// meters live here and are forwarded to every registry bound later
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+	private final Map<Downstream, Timer> callTimers = new EnumMap<>(Downstream.class);
+
+	public TourGuideExecutor(ExecutionMode mode, int forkJoinParallelism, Map<Downstream, Integer> permitsPerDownstream) {
+		this.mode = mode;
+		this.forkJoinParallelism = forkJoinParallelism;
+		executorService = switch (mode) {
+			case VIRTUAL_THREADS -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tourguide-", 0).factory());
+			case FORK_JOIN -> new ForkJoinPool(forkJoinParallelism);
+		};
+		for (Downstream downstream : Downstream.values()) {
+			int count = permitsPerDownstream.getOrDefault(downstream, DEFAULT_PERMITS.get(downstream));
+			Semaphore semaphore = new Semaphore(count);
+			permits.put(downstream, semaphore);
+			callTimers.put(downstream, Timer.builder("tourguide.downstream.calls")
+					.description("Duration of the calls to a downstream dependency, permit wait excluded")
+					.tag("downstream", downstream.getOperation())
+					.publishPercentiles(0.5, 0.95, 0.99)
+					.publishPercentileHistogram()
+					.register(meterRegistry));
+			Gauge.builder("tourguide.downstream.waiting", semaphore, Semaphore::getQueueLength)
+					.description("Calls queued for a permit")
+					.tag("downstream", downstream.getOperation())
+					.register(meterRegistry);
+			Gauge.builder("tourguide.downstream.permits.available", semaphore, Semaphore::availablePermits)
+					.tag("downstream", downstream.getOperation())
+					.register(meterRegistry);
+		}
+		if (executorService instanceof ForkJoinPool pool) {
+			Gauge.builder("tourguide.executor.queued", pool, p -> p.getQueuedSubmissionCount() + p.getQueuedTaskCount())
+					.description("Tasks waiting for a fork join worker")
+					.register(meterRegistry);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		meterRegistry.add(registry);
+	}
+
+	public static TourGuideExecutor defaults() {
+		return new TourGuideExecutor(ExecutionMode.VIRTUAL_THREADS, DEFAULT_FORK_JOIN_PARALLELISM, DEFAULT_PERMITS);
+	}
+
+	public ExecutionMode getMode() {
+		return mode;
+	}
+
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * Creates a pool using the same execution mode, the caller owns and shuts it down.
+	 * In fork join mode it is a view of the shared fork join pool : no thread is added, and shutting it down
+	 * only stops the tasks submitted through it.
+	 * Downstream calls made from it still share the permits of this executor.
+	 */
+	public ExecutorService newWorkerPool(String threadNamePrefix) {
+		return switch (mode) {
+			case VIRTUAL_THREADS -> Executors.newThreadPerTaskExecutor(
+					Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+			case FORK_JOIN -> new SharedPoolView(executorService);
+		};
+	}
+
+	/**
+	 * Runs a blocking call to a downstream dependency once one of its permits is available
+	 *
+	 * @throws CancellationException when the caller is interrupted while waiting, the call is then never made
+	 */
+	public <T> T call(Downstream downstream, Supplier<T> call) {
+		Semaphore semaphore = permits.get(downstream);
+		try {
+			semaphore.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for a " + downstream.getOperation() + " permit");
+		}
+		try {
+			return callTimers.get(downstream).record(call);
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	public CompletableFuture<Void> runAsync(Runnable task) {
+		return CompletableFuture.runAsync(task, executorService);
+	}
+
+	public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, executorService);
+	}
+
+	public int getAvailablePermits(Downstream downstream) {
+		return permits.get(downstream).availablePermits();
+	}
+
+	public void shutdown() {
+		executorService.shutdown();
+	}
+
+	/**
+	 * Tasks run on the shared pool, the view keeps track of its own tasks to shut them down
+	 */
+	private static class SharedPoolView extends AbstractExecutorService {
+		private final ExecutorService pool;
+		// a pool thread can run several tasks of the view at once while it helps a join
+		private final Map<Thread, Integer> runningThreads = new ConcurrentHashMap<>();
+		private final AtomicInteger unfinishedTasks = new AtomicInteger();
+		private volatile boolean shutdown;
+
+		SharedPoolView(ExecutorService pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Worker pool shut down");
+			}
+			unfinishedTasks.incrementAndGet();
+			try {
+				pool.execute(() -> run(task));
+			} catch (RejectedExecutionException e) {
+				unfinishedTasks.decrementAndGet();
+				throw e;
+			}
+		}
+
+		private void run(Runnable task) {
+			Thread thread = Thread.currentThread();
+			runningThreads.merge(thread, 1, Integer::sum);
+			try {
+				// tasks still queued when the view is shut down are dropped
+				if (!shutdown) {
+					task.run();
+				}
+			} finally {
+				runningThreads.computeIfPresent(thread, (ignored, count) -> count == 1 ? null : count - 1);
+				if (shutdown && !runningThreads.containsKey(thread)) {
+					// the pool thread goes on with tasks of other owners, an interrupt meant for this view stops here
+					Thread.interrupted();
+				}
+				unfinishedTasks.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			shutdown = true;
+			runningThreads.keySet().forEach(Thread::interrupt);
+			return List.of();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return shutdown && unfinishedTasks.get() == 0;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while (!isTerminated()) {
+				if (System.nanoTime() > deadline) {
+					return false;
+				}
+				Thread.sleep(1);
+			}
+			return true;
+		}
+	}
+}
@@ -1,14 +1,30 @@
 package com.openclassrooms.tourguide.config;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import gpsUtil.GpsUtil;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.client.RewardCentralClient;
+import com.openclassrooms.tourguide.concurrent.Downstream;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.repository.MappedUserRepository;
+import com.openclassrooms.tourguide.repository.UserRepository;
 import com.openclassrooms.tourguide.service.RewardsService;
 
 @Configuration
 public class TourGuideModule {
+	private Logger logger = LoggerFactory.getLogger(TourGuideModule.class);
 	
 	@Bean
 	public GpsUtil getGpsUtil() {
@@ -16,8 +32,49 @@ public class TourGuideModule {
 	}
 	
 	@Bean
-	public RewardsService getRewardsService() {
-		return new RewardsService(getGpsUtil(), getRewardCentral());
+	public TourGuideExecutor getTourGuideExecutor(
+			@Value("${tourguide.executor.mode:VIRTUAL_THREADS}") ExecutionMode mode,
+			@Value("${tourguide.executor.fork-join-parallelism:64}") int forkJoinParallelism,
+			@Value("${tourguide.executor.permits.gps-util:1000}") int gpsUtilPermits,
+			@Value("${tourguide.executor.permits.reward-central:5000}") int rewardCentralPermits,
+			@Value("${tourguide.executor.permits.trip-pricer:1000}") int tripPricerPermits) {
+		return new TourGuideExecutor(mode, forkJoinParallelism, Map.of(
+				Downstream.GPS_UTIL, gpsUtilPermits,
+				Downstream.REWARD_CENTRAL, rewardCentralPermits,
+				Downstream.TRIP_PRICER, tripPricerPermits));
+	}
+
+	@Bean
+	public RewardCentralClient getRewardCentralClient(TourGuideExecutor tourGuideExecutor,
+			@Value("${tourguide.reward-central.batch-window:0}") Duration batchWindow) {
+		return new RewardCentralClient(getRewardCentral(), tourGuideExecutor, batchWindow);
+	}
+
+	@Bean
+	public RewardsService getRewardsService(RewardCentralClient rewardCentralClient, TourGuideExecutor tourGuideExecutor,
+			@Value("${tourguide.reward-cache.maximum-size:500000}") long rewardCacheMaximumSize,
+			@Value("${tourguide.reward-cache.ttl:1h}") Duration rewardCacheTtl,
+			@Value("${tourguide.rewards.vectorized-proximity:false}") boolean vectorizedProximity) {
+		RewardsService rewardsService = new RewardsService(getGpsUtil(), rewardCentralClient, tourGuideExecutor,
+				rewardCacheMaximumSize, rewardCacheTtl);
+		if (!rewardsService.setVectorizedProximity(vectorizedProximity)) {
+			logger.warn("Vectorized proximity requested but the jdk.incubator.vector module is not available,"
+					+ " start the JVM with --add-modules jdk.incubator.vector : the k-d tree is used instead");
+		}
+		return rewardsService;
+	}
+	
+	/**
+	 * Users are kept in memory only, unless a directory is given for the local store
+	 */
+	@Bean
+	public UserRepository getUserRepository(RewardsService rewardsService,
+			@Value("${tourguide.user-store.directory:}") String directory,
+			@Value("${tourguide.user-store.compaction-interval:10m}") Duration compactionInterval) throws IOException {
+		return directory.isBlank()
+				? new InMemoryUserRepository()
+				: new MappedUserRepository(Path.of(directory), rewardsService.getAttractionIndex()::findByName,
+						compactionInterval);
 	}
 	
 	@Bean
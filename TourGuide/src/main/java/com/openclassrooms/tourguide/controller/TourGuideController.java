@@ -1,16 +1,37 @@
 package com.openclassrooms.tourguide.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.domain.dto.IngestResultDTO;
+import com.openclassrooms.tourguide.domain.dto.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.domain.dto.LocationReportDTO;
 import com.openclassrooms.tourguide.domain.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.domain.dto.UserResultDTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import gpsUtil.location.VisitedLocation;
 
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracking.LocationSnapshot;
 import com.openclassrooms.tourguide.domain.model.User;
 
 import tripPricer.Provider;
@@ -18,8 +39,15 @@ import tripPricer.Provider;
 @RestController
 public class TourGuideController {
 
+	private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+	// users per page of the bulk endpoints
+	private static final int MAX_PAGE_SIZE = 10_000;
+
 	@Autowired
 	TourGuideService tourGuideService;
+
+	@Autowired
+	ObjectMapper objectMapper;
 	
     @RequestMapping("/")
     public String index() {
@@ -27,14 +55,80 @@ public class TourGuideController {
     }
     
     @RequestMapping("/getLocation") 
-    public VisitedLocation getLocation(@RequestParam String userName) {
-    	return tourGuideService.getUserLocation(getUser(userName));
+    public CompletableFuture<VisitedLocation> getLocation(@RequestParam String userName) {
+    	return tourGuideService.getUserLocationAsync(getUser(userName));
+    }
+
+    /**
+     * Last known location of every user, from the snapshot published by the tracker.
+     * format=binary returns the fixed size records described in LocationSnapshot, gzip is used when accepted.
+     */
+    @RequestMapping("/getAllCurrentLocations")
+    public ResponseEntity<byte[]> getAllCurrentLocations(@RequestParam(defaultValue = "json") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    	LocationSnapshot snapshot = tourGuideService.getLocationSnapshot();
+    	boolean binary = "binary".equalsIgnoreCase(format);
+    	boolean gzip = acceptsGzip(acceptEncoding);
+    	byte[] body = binary
+    			? (gzip ? snapshot.toGzippedBinary() : snapshot.toBinary())
+    			: (gzip ? snapshot.toGzippedJson() : snapshot.toJson());
+
+    	ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+    			.contentType(binary ? MediaType.APPLICATION_OCTET_STREAM : MediaType.APPLICATION_JSON)
+    			.lastModified(snapshot.getCreatedAt())
+    			.varyBy(HttpHeaders.ACCEPT_ENCODING);
+    	if (gzip) {
+    		response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+    	}
+    	return response.body(body);
+    }
+
+    /**
+     * @return true when gzip, or any coding, is listed with a non zero quality, and gzip is not refused on its own
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+    	if (acceptEncoding == null) {
+    		return false;
+    	}
+    	Double gzipQuality = null;
+    	Double anyQuality = null;
+    	for (String coding : acceptEncoding.split(",")) {
+    		String[] parameters = coding.split(";");
+    		String name = parameters[0].trim();
+    		double quality = 1;
+    		for (int i = 1; i < parameters.length; i++) {
+    			String parameter = parameters[i].trim();
+    			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+    				try {
+    					quality = Double.parseDouble(parameter.substring(2).trim());
+    				} catch (NumberFormatException e) {
+    					quality = 0;
+    				}
+    			}
+    		}
+    		if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+    			gzipQuality = quality;
+    		} else if (name.equals("*")) {
+    			anyQuality = quality;
+    		}
+    	}
+    	double quality = gzipQuality != null ? gzipQuality : anyQuality != null ? anyQuality : 0;
+    	return quality > 0;
+    }
+
+    /**
+     * Positions pushed by the clients, in batches of (userId, latitude, longitude, timestamp).
+     * They are appended to the histories at once, rewards follow asynchronously.
+     */
+    @PostMapping("/locations")
+    public IngestResultDTO ingestLocations(@RequestBody List<LocationReportDTO> reports) {
+    	return tourGuideService.ingestLocations(reports);
     }
 
     @RequestMapping("/getNearbyAttractions") 
-    public List<NearbyAttractionDTO> getNearbyAttractions(@RequestParam String userName) {
-    	VisitedLocation visitedLocation = tourGuideService.getUserLocation(getUser(userName));
-    	return tourGuideService.getNearByAttractions(visitedLocation);
+    public CompletableFuture<List<NearbyAttractionDTO>> getNearbyAttractions(@RequestParam String userName) {
+    	return tourGuideService.getUserLocationAsync(getUser(userName))
+    			.thenCompose(tourGuideService::getNearByAttractionsAsync);
     }
     
     @RequestMapping("/getRewards") 
@@ -42,11 +136,93 @@ public class TourGuideController {
     	return tourGuideService.getUserRewards(getUser(userName));
     }
        
+    /**
+     * Users with the most reward points, highest first, kept up to date as rewards are granted
+     */
+    @RequestMapping("/getRewardLeaderboard")
+    public List<LeaderboardEntryDTO> getRewardLeaderboard(@RequestParam(defaultValue = "100") int limit) {
+    	return tourGuideService.getRewardLeaderboard(limit);
+    }
+
     @RequestMapping("/getTripDeals")
-    public List<Provider> getTripDeals(@RequestParam String userName) {
-    	return tourGuideService.getTripDeals(getUser(userName));
+    public CompletableFuture<List<Provider>> getTripDeals(@RequestParam String userName) {
+    	return tourGuideService.getTripDealsAsync(getUser(userName));
     }
     
+    /*
+     * Bulk endpoints : users are given by name, or paged over every user in name order.
+     * A page starts after the user name given as cursor, the Link header of a full page points to the next one.
+     * A page holds 1 to 10000 users, other limits are rejected with a 400.
+     * Results are evaluated concurrently and streamed as newline delimited JSON, one user per line.
+     */
+
+    @RequestMapping("/users/locations")
+    public ResponseEntity<StreamingResponseBody> getLocations(@RequestParam(required = false) List<String> userName,
+            @RequestParam(required = false) String after, @RequestParam(defaultValue = "1000") int limit) {
+    	return streamUsers(userName, after, limit, tourGuideService::getUserLocationAsync);
+    }
+
+    @RequestMapping("/users/rewards")
+    public ResponseEntity<StreamingResponseBody> getRewards(@RequestParam(required = false) List<String> userName,
+            @RequestParam(required = false) String after, @RequestParam(defaultValue = "1000") int limit) {
+    	return streamUsers(userName, after, limit,
+    			user -> CompletableFuture.completedFuture(tourGuideService.getUserRewards(user)));
+    }
+
+    @RequestMapping("/users/nearbyAttractions")
+    public ResponseEntity<StreamingResponseBody> getNearbyAttractions(@RequestParam(required = false) List<String> userName,
+            @RequestParam(required = false) String after, @RequestParam(defaultValue = "1000") int limit) {
+    	return streamUsers(userName, after, limit, user -> tourGuideService.getUserLocationAsync(user)
+    			.thenCompose(tourGuideService::getNearByAttractionsAsync));
+    }
+
+    private <T> ResponseEntity<StreamingResponseBody> streamUsers(List<String> userNames, String after, int limit,
+            Function<User, CompletableFuture<T>> evaluation) {
+    	if (limit < 1 || limit > MAX_PAGE_SIZE) {
+    		return ResponseEntity.badRequest().build();
+    	}
+    	// the page is read before the response starts, its cursor goes in the headers
+    	List<User> page = userNames == null ? tourGuideService.getUserRepository().findPageAfter(after, limit) : null;
+    	StreamingResponseBody body = outputStream -> {
+    		// each line is flushed as soon as it is written, nothing accumulates in the response
+    		Consumer<UserResultDTO<?>> writeLine = line -> {
+    			try {
+    				outputStream.write(objectMapper.writeValueAsBytes(line));
+    				outputStream.write('\n');
+    				outputStream.flush();
+    			} catch (IOException e) {
+    				throw new UncheckedIOException(e);
+    			}
+    		};
+    		Iterator<User> users;
+    		if (page != null) {
+    			users = page.iterator();
+    		} else {
+    			List<User> knownUsers = new ArrayList<>(userNames.size());
+    			for (String name : userNames) {
+    				User user = getUser(name);
+    				if (user == null) {
+    					writeLine.accept(new UserResultDTO<>(name, null, "Unknown user"));
+    				} else {
+    					knownUsers.add(user);
+    				}
+    			}
+    			users = knownUsers.iterator();
+    		}
+    		tourGuideService.evaluateUsers(users, evaluation, writeLine::accept);
+    	};
+    	ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(NDJSON);
+    	if (page != null && !page.isEmpty() && page.size() == limit) {
+    		String next = ServletUriComponentsBuilder.fromCurrentRequest()
+    				.replaceQueryParam("after", page.get(page.size() - 1).getUserName())
+    				.build()
+    				.encode()
+    				.toUriString();
+    		response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    	}
+    	return response.body(body);
+    }
+
     private User getUser(String userName) {
     	return tourGuideService.getUser(userName);
     }
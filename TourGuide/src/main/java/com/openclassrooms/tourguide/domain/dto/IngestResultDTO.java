@@ -0,0 +1,20 @@
+package com.openclassrooms.tourguide.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of a batch of reported positions : rejected ones have an unknown user or invalid coordinates
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestResultDTO {
+
+    public int accepted;
+    public int rejected;
+
+}
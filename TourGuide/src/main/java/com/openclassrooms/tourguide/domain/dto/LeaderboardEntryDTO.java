@@ -0,0 +1,18 @@
+package com.openclassrooms.tourguide.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardEntryDTO {
+
+    public int rank;
+    public String userName;
+    public long rewardPoints;
+
+}
@@ -0,0 +1,24 @@
+package com.openclassrooms.tourguide.domain.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A position reported by a client, the timestamp in epoch milliseconds
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationReportDTO {
+
+    public UUID userId;
+    public double latitude;
+    public double longitude;
+    public long timestamp;
+
+}
@@ -0,0 +1,24 @@
+package com.openclassrooms.tourguide.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One line of a bulk response : the result for a user, or why there is none
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserResultDTO<T> {
+
+    public String userName;
+    public T result;
+    public String error;
+
+}
@@ -0,0 +1,160 @@
+package com.openclassrooms.tourguide.domain.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Bounded history of the locations visited by one user.
+ * Entries are kept in a ring buffer of primitive arrays, grown on demand up to the capacity,
+ * the oldest entries being overwritten once it is full. VisitedLocation objects are only
+ * created when read.
+ * Every entry has a sequence number : the number of locations appended before it,
+ * which keeps counting after older entries are overwritten.
+ */
+public class LocationHistory {
+	public static final int DEFAULT_CAPACITY = 1000;
+	private static final int INITIAL_SIZE = 4;
+
+	private final UUID userId;
+	private final int capacity;
+	private double[] latitudes = new double[0];
+	private double[] longitudes = new double[0];
+	private long[] times = new long[0];
+	// sequence number of the next entry
+	private int appended;
+	private int size;
+	// published separately so that reading the last location never takes the lock
+	private volatile VisitedLocation last;
+
+	public LocationHistory(UUID userId, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Location history capacity must be positive : " + capacity);
+		}
+		this.userId = userId;
+		this.capacity = capacity;
+	}
+
+	public synchronized void add(VisitedLocation visitedLocation) {
+		if (size == latitudes.length && size < capacity) {
+			grow();
+		}
+		int slot = appended % latitudes.length;
+		latitudes[slot] = visitedLocation.location.latitude;
+		longitudes[slot] = visitedLocation.location.longitude;
+		times[slot] = visitedLocation.timeVisited.getTime();
+		appended++;
+		size = Math.min(size + 1, capacity);
+		last = visitedLocation;
+	}
+
+	/**
+	 * Appends the locations in order, under a single lock acquisition
+	 */
+	public synchronized void addAll(List<VisitedLocation> visitedLocations) {
+		visitedLocations.forEach(this::add);
+	}
+
+	private void grow() {
+		int length = Math.min(capacity, Math.max(INITIAL_SIZE, latitudes.length * 2));
+		// entries are not wrapped yet, so they keep their slot
+		latitudes = Arrays.copyOf(latitudes, length);
+		longitudes = Arrays.copyOf(longitudes, length);
+		times = Arrays.copyOf(times, length);
+	}
+
+	public VisitedLocation getLast() {
+		return last;
+	}
+
+	public boolean isEmpty() {
+		return last == null;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of locations ever appended, including the overwritten ones
+	 */
+	public synchronized int appendedCount() {
+		return appended;
+	}
+
+	/**
+	 * @return the retained locations between the given sequence numbers, end excluded, oldest first
+	 */
+	public synchronized Slice between(int fromSequence, int toSequence) {
+		int from = Math.max(fromSequence, appended - size);
+		int count = Math.max(0, Math.min(toSequence, appended) - from);
+		double[] lat = new double[count];
+		double[] lon = new double[count];
+		long[] time = new long[count];
+		for (int i = 0; i < count; i++) {
+			int slot = (from + i) % latitudes.length;
+			lat[i] = latitudes[slot];
+			lon[i] = longitudes[slot];
+			time[i] = times[slot];
+		}
+		return new Slice(userId, lat, lon, time);
+	}
+
+	public List<VisitedLocation> toList() {
+		return between(0, Integer.MAX_VALUE);
+	}
+
+	public synchronized void clear() {
+		latitudes = new double[0];
+		longitudes = new double[0];
+		times = new long[0];
+		appended = 0;
+		size = 0;
+		last = null;
+	}
+
+	/**
+	 * Copy of a range of the history.
+	 * Bulk consumers read the coordinate arrays directly, they belong to the slice and must not be modified.
+	 */
+	public static class Slice extends AbstractList<VisitedLocation> {
+		private final UUID userId;
+		private final double[] latitudes;
+		private final double[] longitudes;
+		private final long[] times;
+
+		private Slice(UUID userId, double[] latitudes, double[] longitudes, long[] times) {
+			this.userId = userId;
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+			this.times = times;
+		}
+
+		@Override
+		public VisitedLocation get(int index) {
+			return new VisitedLocation(userId, new Location(latitudes[index], longitudes[index]), new Date(times[index]));
+		}
+
+		@Override
+		public int size() {
+			return times.length;
+		}
+
+		public double[] latitudes() {
+			return latitudes;
+		}
+
+		public double[] longitudes() {
+			return longitudes;
+		}
+
+		public long[] times() {
+			return times;
+		}
+	}
+}
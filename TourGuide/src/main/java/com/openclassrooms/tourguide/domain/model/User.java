@@ -1,6 +1,12 @@
 package com.openclassrooms.tourguide.domain.model;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
@@ -12,15 +18,32 @@ public class User {
 	private String phoneNumber;
 	private String emailAddress;
 	private Date latestLocationTimestamp;
-	private final List<VisitedLocation> visitedLocations = Collections.synchronizedList(new ArrayList<>());
-	private final List<UserReward> userRewards = Collections.synchronizedList(new ArrayList<>());
+	private final LocationHistory visitedLocations;
+	// one reward per attraction name, ids are drawn anew by every attraction list ; the queue keeps the grant order
+	private final ConcurrentMap<String, UserReward> rewardsByAttraction = new ConcurrentHashMap<>();
+	private final Queue<UserReward> userRewards = new ConcurrentLinkedQueue<>();
+	// points of the rewards, summed as they are added
+	private final AtomicLong rewardPoints = new AtomicLong();
+	// reward pass high-water mark : the proximity settings of the pass and the locations it processed
+	private final AtomicReference<RewardCursor> rewardCursor = new AtomicReference<>(RewardCursor.START);
 	private UserPreferences userPreferences = new UserPreferences();
 	private List<Provider> tripDeals = new ArrayList<>();
+	private volatile UserEventListener listener = UserEventListener.NONE;
+	// fills the history on its first access, set for generated users
+	private volatile Consumer<LocationHistory> historyInitializer;
 	public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
+		this(userId, userName, phoneNumber, emailAddress, LocationHistory.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param locationHistoryCapacity number of visited locations kept, the oldest ones are dropped first
+	 */
+	public User(UUID userId, String userName, String phoneNumber, String emailAddress, int locationHistoryCapacity) {
 		this.userId = userId;
 		this.userName = userName;
 		this.phoneNumber = phoneNumber;
 		this.emailAddress = emailAddress;
+		this.visitedLocations = new LocationHistory(userId, locationHistoryCapacity);
 	}
 	
 	public UUID getUserId() {
@@ -56,32 +79,150 @@ public class User {
 	}
 	
 	public void addToVisitedLocations(VisitedLocation visitedLocation) {
-		visitedLocations.add(visitedLocation);
+		history().add(visitedLocation);
+		listener.locationAdded(this, visitedLocation);
 	}
 	
+	public void addToVisitedLocations(List<VisitedLocation> visitedLocations) {
+		history().addAll(visitedLocations);
+		UserEventListener listener = this.listener;
+		visitedLocations.forEach(visitedLocation -> listener.locationAdded(this, visitedLocation));
+	}
+
+	/**
+	 * @return a read only copy of the retained visited locations, oldest first
+	 */
 	public List<VisitedLocation> getVisitedLocations() {
+		return history().toList();
+	}
+
+	public LocationHistory getLocationHistory() {
+		return history();
+	}
+
+	/**
+	 * Defers the creation of the history until it is first read or written, the listener is then notified
+	 * of the generated locations
+	 */
+	public void initializeHistoryLazily(Consumer<LocationHistory> initializer) {
+		historyInitializer = initializer;
+	}
+
+	/**
+	 * @return true while a lazily created history has not been accessed yet
+	 */
+	public boolean isHistoryPending() {
+		return historyInitializer != null;
+	}
+
+	private LocationHistory history() {
+		if (historyInitializer != null) {
+			int generatedCount = -1;
+			synchronized (visitedLocations) {
+				Consumer<LocationHistory> initializer = historyInitializer;
+				if (initializer != null) {
+					initializer.accept(visitedLocations);
+					historyInitializer = null;
+					generatedCount = visitedLocations.appendedCount();
+				}
+			}
+			if (generatedCount > 0) {
+				// the generated locations are notified like added ones, outside of the history lock
+				LocationHistory.Slice generated = visitedLocations.between(0, generatedCount);
+				UserEventListener listener = this.listener;
+				for (int i = 0; i < generated.size(); i++) {
+					listener.locationAdded(this, generated.get(i));
+				}
+			}
+		}
 		return visitedLocations;
 	}
+
+	public boolean hasVisitedLocations() {
+		return !history().isEmpty();
+	}
 	
 	public void clearVisitedLocations() {
-		visitedLocations.clear();
+		history().clear();
+		rewardCursor.set(RewardCursor.START);
+		listener.locationsCleared(this);
 	}
-	public void addUserReward(UserReward userReward) {
-		synchronized (userRewards) {
-			boolean alreadyAdded = userRewards.stream()
-					.noneMatch(r -> r.attraction.attractionName.equals(
-							userReward.attraction.attractionName
-					));
-			if (alreadyAdded) {
-				userRewards.add(userReward);
+
+	/**
+	 * Claims the visited locations that still need a reward pass.
+	 * Locations before the returned index were already evaluated with the same proximity settings,
+	 * new settings mean the whole history has to be evaluated again.
+	 *
+	 * @param proximity identifies the proximity settings of the pass, such as the radius and its generation
+	 * @return the index of the first location to evaluate, up to locationCount excluded
+	 */
+	public int claimLocationsToReward(long proximity, int locationCount) {
+		while (true) {
+			RewardCursor cursor = rewardCursor.get();
+			boolean sameProximity = cursor.proximity() == proximity;
+			int from = sameProximity && cursor.processed() <= locationCount ? cursor.processed() : 0;
+			if (from == locationCount && sameProximity) {
+				return from;
+			}
+			if (rewardCursor.compareAndSet(cursor, new RewardCursor(proximity, locationCount))) {
+				return from;
 			}
 		}
 	}
-	
+
+	/**
+	 * Gives back the locations claimed from the given index by a pass that failed, the next pass evaluates them again
+	 */
+	public void releaseLocationsToReward(long proximity, int from) {
+		rewardCursor.updateAndGet(cursor -> cursor.proximity() == proximity && cursor.processed() > from
+				? new RewardCursor(proximity, from)
+				: cursor);
+	}
+
+	private record RewardCursor(long proximity, int processed) {
+		static final RewardCursor START = new RewardCursor(0, 0);
+	}
+
+	public boolean hasRewardFor(String attractionName) {
+		return rewardsByAttraction.containsKey(attractionName);
+	}
+
+	/**
+	 * Adds the reward unless the user already has one for the same attraction
+	 */
+	public void addUserReward(UserReward userReward) {
+		if (rewardsByAttraction.putIfAbsent(userReward.attraction.attractionName, userReward) == null) {
+			rewardPoints.addAndGet(userReward.getRewardPoints());
+			userRewards.add(userReward);
+			listener.rewardAdded(this, userReward);
+		}
+	}
+
+	/**
+	 * @return a read only copy of the rewards, in the order they were granted
+	 */
 	public List<UserReward> getUserRewards() {
-		return userRewards;
+		return List.copyOf(userRewards);
+	}
+
+	/**
+	 * @return the sum of the reward points, without going through the rewards
+	 */
+	public long getRewardPoints() {
+		return rewardPoints.get();
 	}
 	
+	/**
+	 * Replaces the listener notified of the new locations and rewards, one per user
+	 */
+	public void setListener(UserEventListener listener) {
+		this.listener = listener == null ? UserEventListener.NONE : listener;
+	}
+
+	public UserEventListener getListener() {
+		return listener;
+	}
+
 	public UserPreferences getUserPreferences() {
 		return userPreferences;
 	}
@@ -91,7 +232,7 @@ public class User {
 	}
 
 	public VisitedLocation getLastVisitedLocation() {
-		return visitedLocations.get(visitedLocations.size() - 1);
+		return history().getLast();
 	}
 	
 	public void setTripDeals(List<Provider> tripDeals) {
@@ -104,7 +245,10 @@ public class User {
 
 	public static class UserPreferences {
 
-		private int attractionProximity = Integer.MAX_VALUE;
+		// the default leaves the proximity buffer of the rewards service
+		public static final int DEFAULT_ATTRACTION_PROXIMITY = Integer.MAX_VALUE;
+
+		private volatile int attractionProximity = DEFAULT_ATTRACTION_PROXIMITY;
 		private int tripDuration = 1;
 		private int ticketQuantity = 1;
 		private int numberOfAdults = 1;
@@ -121,6 +265,10 @@ public class User {
 			return attractionProximity;
 		}
 
+		public boolean hasAttractionProximity() {
+			return attractionProximity != DEFAULT_ATTRACTION_PROXIMITY;
+		}
+
 		public int getTripDuration() {
 			return tripDuration;
 		}
@@ -171,6 +319,9 @@ public class User {
 			this.attraction = attraction;
 		}
 
+		/**
+		 * Only before the reward is added to its user, the user total is summed when it is added
+		 */
 		public void setRewardPoints(int rewardPoints) {
 			this.rewardPoints = rewardPoints;
 		}
@@ -0,0 +1,47 @@
+package com.openclassrooms.tourguide.domain.model;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Notified of the changes made to a user, used by the repositories that persist them.
+ * Called on the thread making the change, after it is applied.
+ */
+public interface UserEventListener {
+	UserEventListener NONE = new UserEventListener() {
+	};
+
+	default void locationAdded(User user, VisitedLocation visitedLocation) {
+	}
+
+	default void locationsCleared(User user) {
+	}
+
+	default void rewardAdded(User user, User.UserReward userReward) {
+	}
+
+	/**
+	 * @return a listener notifying this one, then the other
+	 */
+	default UserEventListener andThen(UserEventListener other) {
+		UserEventListener first = this;
+		return new UserEventListener() {
+			@Override
+			public void locationAdded(User user, VisitedLocation visitedLocation) {
+				first.locationAdded(user, visitedLocation);
+				other.locationAdded(user, visitedLocation);
+			}
+
+			@Override
+			public void locationsCleared(User user) {
+				first.locationsCleared(user);
+				other.locationsCleared(user);
+			}
+
+			@Override
+			public void rewardAdded(User user, User.UserReward userReward) {
+				first.rewardAdded(user, userReward);
+				other.rewardAdded(user, userReward);
+			}
+		};
+	}
+}
@@ -0,0 +1,329 @@
+package com.openclassrooms.tourguide.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+/**
+ * Immutable k-d tree over the attraction catalog.
+ * Attractions are stored as unit-sphere vectors, so the chord length between
+ * two points grows with their great-circle distance and can be used to prune
+ * the tree for both range and nearest-neighbour queries.
+ * Batches of locations can also be scanned with the incubating Vector API,
+ * when built with the vector profile and run with --add-modules jdk.incubator.vector.
+ */
+public class AttractionIndex {
+	private static final ProximityScan VECTOR_SCAN = loadVectorScan();
+	private static final boolean VECTOR_API_AVAILABLE = VECTOR_SCAN != null;
+
+	private final List<Attraction> attractions;
+	// names stay the same across restarts, unlike the attraction ids
+	private final Map<String, Attraction> attractionByName = new HashMap<>();
+	private final Map<UUID, Integer> nodeByAttractionId = new HashMap<>();
+	// gpsUtil gives new ids on every getAttractions call, the same attraction from another call is found by name
+	private final Map<String, Integer> nodeByAttractionName = new HashMap<>();
+	// tree nodes, in tree order : node i covers a sub range with its split point in the middle
+	private final Attraction[] nodes;
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] zs;
+	private final byte[] splitAxis;
+
+	private AttractionIndex(List<Attraction> attractions) {
+		this.attractions = List.copyOf(attractions);
+		this.attractions.forEach(attraction -> attractionByName.putIfAbsent(attraction.attractionName, attraction));
+		int size = this.attractions.size();
+		nodes = new Attraction[size];
+		xs = new double[size];
+		ys = new double[size];
+		zs = new double[size];
+		splitAxis = new byte[size];
+
+		double[][] points = new double[size][];
+		for (int i = 0; i < size; i++) {
+			points[i] = GreatCircle.toUnitVector(this.attractions.get(i));
+		}
+		Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+		build(order, points, 0, size);
+	}
+
+	public static AttractionIndex of(List<Attraction> attractions) {
+		return new AttractionIndex(attractions);
+	}
+
+	public List<Attraction> getAttractions() {
+		return attractions;
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public Optional<Attraction> findByName(String attractionName) {
+		return Optional.ofNullable(attractionByName.get(attractionName));
+	}
+
+	/**
+	 * @return every attraction whose great-circle distance to the location is at most the given miles
+	 */
+	public List<Attraction> findWithin(Location location, double miles) {
+		List<Attraction> result = new ArrayList<>();
+		if (miles < 0 || nodes.length == 0) {
+			return result;
+		}
+		if (miles / GreatCircle.MILES_PER_RADIAN >= Math.PI) {
+			result.addAll(attractions);
+			return result;
+		}
+		double[] query = GreatCircle.toUnitVector(location);
+		double maxChordSquared = GreatCircle.chordSquaredForMiles(miles);
+		collectWithin(query, maxChordSquared, 0, nodes.length, result);
+		return result;
+	}
+
+	/**
+	 * Bulk range query over a batch of locations given as parallel coordinate arrays.
+	 * The vectorized scan compares every attraction on SIMD lanes, otherwise each location queries the tree.
+	 * Both return the same attractions, in a different order.
+	 *
+	 * @param vectorized use the Vector API scan, ignored when the module is not available
+	 * @return for each location, the attractions whose distance is at most the given miles
+	 */
+	public List<List<Attraction>> findWithin(double[] latitudes, double[] longitudes, double miles, boolean vectorized) {
+		if (!vectorized || !VECTOR_API_AVAILABLE || miles < 0 || miles / GreatCircle.MILES_PER_RADIAN >= Math.PI) {
+			List<List<Attraction>> result = new ArrayList<>(latitudes.length);
+			for (int i = 0; i < latitudes.length; i++) {
+				result.add(findWithin(new Location(latitudes[i], longitudes[i]), miles));
+			}
+			return result;
+		}
+		double maxChordSquared = GreatCircle.chordSquaredForMiles(miles);
+		int[] hits = new int[nodes.length];
+		List<List<Attraction>> result = new ArrayList<>(latitudes.length);
+		for (int i = 0; i < latitudes.length; i++) {
+			double[] query = GreatCircle.toUnitVector(new Location(latitudes[i], longitudes[i]));
+			int count = VECTOR_SCAN.scan(xs, ys, zs, query[0], query[1], query[2], maxChordSquared, hits);
+			List<Attraction> within = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				within.add(nodes[hits[j]]);
+			}
+			result.add(within);
+		}
+		return result;
+	}
+
+	public static boolean isVectorApiAvailable() {
+		return VECTOR_API_AVAILABLE;
+	}
+
+	// the scan is only compiled by the vector profile, the default build never sees the incubating module
+	private static ProximityScan loadVectorScan() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return null;
+		}
+		try {
+			return (ProximityScan) Class.forName("com.openclassrooms.tourguide.geo.VectorProximityScan")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true when the attraction is part of the catalog, by id or by name and position,
+	 * its precomputed vector is then used by the proximity and distance queries
+	 */
+	public boolean isIndexed(Attraction attraction) {
+		return nodeOf(attraction) >= 0;
+	}
+
+	/**
+	 * Proximity test against the precomputed vector of the attraction
+	 *
+	 * @param maxChordSquared the radius, from {@link GreatCircle#chordSquaredForMiles(double)}
+	 */
+	public boolean isWithin(Attraction attraction, Location location, double maxChordSquared) {
+		return chordSquared(attraction, GreatCircle.toUnitVector(location)) <= maxChordSquared;
+	}
+
+	/**
+	 * @return the great-circle distance in miles, using the precomputed vector of the attraction
+	 */
+	public double distance(Attraction attraction, Location location) {
+		return GreatCircle.chordSquaredToMiles(chordSquared(attraction, GreatCircle.toUnitVector(location)));
+	}
+
+	private double chordSquared(Attraction attraction, double[] query) {
+		int node = nodeOf(attraction);
+		if (node < 0) {
+			// not part of the catalog
+			return GreatCircle.chordSquared(GreatCircle.toUnitVector(attraction), query);
+		}
+		return chordSquared(query, node);
+	}
+
+	/**
+	 * @return the tree node of the attraction, -1 when not part of the catalog
+	 */
+	private int nodeOf(Attraction attraction) {
+		Integer node = nodeByAttractionId.get(attraction.attractionId);
+		if (node == null) {
+			node = nodeByAttractionName.get(attraction.attractionName);
+			// a namesake elsewhere is not the same attraction
+			if (node == null || nodes[node].latitude != attraction.latitude
+					|| nodes[node].longitude != attraction.longitude) {
+				return -1;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @return the k closest attractions to the location, closest first
+	 */
+	public List<Neighbor> findNearest(Location location, int k) {
+		int limit = Math.min(k, nodes.length);
+		if (limit <= 0) {
+			return List.of();
+		}
+		double[] query = GreatCircle.toUnitVector(location);
+		NearestCollector collector = new NearestCollector(limit);
+		collectNearest(query, collector, 0, nodes.length);
+
+		List<Neighbor> neighbors = new ArrayList<>(collector.count);
+		for (int i = 0; i < collector.count; i++) {
+			neighbors.add(new Neighbor(nodes[collector.nodes[i]], GreatCircle.chordSquaredToMiles(collector.distances[i])));
+		}
+		return neighbors;
+	}
+
+	private void build(Integer[] order, double[][] points, int lo, int hi) {
+		if (lo >= hi) {
+			return;
+		}
+		int axis = widestAxis(order, points, lo, hi);
+		Arrays.sort(order, lo, hi, Comparator.comparingDouble(i -> points[i][axis]));
+		int mid = (lo + hi) >>> 1;
+		double[] point = points[order[mid]];
+		nodes[mid] = attractions.get(order[mid]);
+		nodeByAttractionId.put(nodes[mid].attractionId, mid);
+		nodeByAttractionName.putIfAbsent(nodes[mid].attractionName, mid);
+		xs[mid] = point[0];
+		ys[mid] = point[1];
+		zs[mid] = point[2];
+		splitAxis[mid] = (byte) axis;
+		build(order, points, lo, mid);
+		build(order, points, mid + 1, hi);
+	}
+
+	private static int widestAxis(Integer[] order, double[][] points, int lo, int hi) {
+		int widest = 0;
+		double widestSpread = -1;
+		for (int axis = 0; axis < 3; axis++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				double value = points[order[i]][axis];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			if (max - min > widestSpread) {
+				widestSpread = max - min;
+				widest = axis;
+			}
+		}
+		return widest;
+	}
+
+	private void collectWithin(double[] query, double maxChordSquared, int lo, int hi, List<Attraction> result) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		if (chordSquared(query, mid) <= maxChordSquared) {
+			result.add(nodes[mid]);
+		}
+		double delta = query[splitAxis[mid]] - coordinate(mid, splitAxis[mid]);
+		boolean nearIsLow = delta < 0;
+		collectWithin(query, maxChordSquared, nearIsLow ? lo : mid + 1, nearIsLow ? mid : hi, result);
+		if (delta * delta <= maxChordSquared) {
+			collectWithin(query, maxChordSquared, nearIsLow ? mid + 1 : lo, nearIsLow ? hi : mid, result);
+		}
+	}
+
+	private void collectNearest(double[] query, NearestCollector collector, int lo, int hi) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		collector.offer(mid, chordSquared(query, mid));
+		double delta = query[splitAxis[mid]] - coordinate(mid, splitAxis[mid]);
+		boolean nearIsLow = delta < 0;
+		collectNearest(query, collector, nearIsLow ? lo : mid + 1, nearIsLow ? mid : hi);
+		if (delta * delta <= collector.worst()) {
+			collectNearest(query, collector, nearIsLow ? mid + 1 : lo, nearIsLow ? hi : mid);
+		}
+	}
+
+	private double chordSquared(double[] query, int node) {
+		double dx = query[0] - xs[node];
+		double dy = query[1] - ys[node];
+		double dz = query[2] - zs[node];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private double coordinate(int node, int axis) {
+		return switch (axis) {
+			case 0 -> xs[node];
+			case 1 -> ys[node];
+			default -> zs[node];
+		};
+	}
+
+	/**
+	 * An attraction returned by a nearest query, with its distance in miles
+	 */
+	public record Neighbor(Attraction attraction, double distance) {
+	}
+
+	/**
+	 * Keeps the k best candidates sorted by distance, closest first
+	 */
+	private static class NearestCollector {
+		private final int[] nodes;
+		private final double[] distances;
+		private int count;
+
+		NearestCollector(int capacity) {
+			nodes = new int[capacity];
+			distances = new double[capacity];
+		}
+
+		double worst() {
+			return count < nodes.length ? Double.POSITIVE_INFINITY : distances[count - 1];
+		}
+
+		void offer(int node, double distance) {
+			if (distance >= worst()) {
+				return;
+			}
+			int i = count < nodes.length ? count++ : count - 1;
+			while (i > 0 && distances[i - 1] > distance) {
+				nodes[i] = nodes[i - 1];
+				distances[i] = distances[i - 1];
+				i--;
+			}
+			nodes[i] = node;
+			distances[i] = distance;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.openclassrooms.tourguide.geo;
+
+import java.util.BitSet;
+import java.util.List;
+
+import gpsUtil.location.Location;
+
+/**
+ * Coarse geofence around the attractions, for one radius : a grid of one degree cells,
+ * each flagged when an attraction may lie within the radius of some point of the cell.
+ * A location in a cell left unflagged is rejected with a single lookup, no distance is computed.
+ * <p>
+ * A cell is flagged when its nearest attraction is within the radius plus the distance from the cell center
+ * to its farthest corner, so the grid never rejects a location that has an attraction in range.
+ */
+public final class GeofenceGrid {
+	private static final int ROWS = 180;
+	private static final int COLUMNS = 360;
+	// slack against rounding, in miles
+	private static final double MARGIN = 1;
+
+	private final double miles;
+	private final BitSet flaggedCells;
+
+	private GeofenceGrid(double miles, BitSet flaggedCells) {
+		this.miles = miles;
+		this.flaggedCells = flaggedCells;
+	}
+
+	public static GeofenceGrid of(AttractionIndex attractionIndex, double miles) {
+		BitSet flaggedCells = new BitSet(ROWS * COLUMNS);
+		if (miles < 0 || attractionIndex.size() == 0) {
+			return new GeofenceGrid(miles, flaggedCells);
+		}
+		if (miles / GreatCircle.MILES_PER_RADIAN >= Math.PI) {
+			flaggedCells.set(0, ROWS * COLUMNS);
+			return new GeofenceGrid(miles, flaggedCells);
+		}
+		for (int row = 0; row < ROWS; row++) {
+			double south = row - 90;
+			double centerLatitude = south + 0.5;
+			// every cell of a row has the same shape
+			Location center = new Location(centerLatitude, 0.5);
+			double cellRadius = Math.max(
+					GreatCircle.miles(center, new Location(south, 0)),
+					GreatCircle.miles(center, new Location(south + 1, 0)));
+			for (int column = 0; column < COLUMNS; column++) {
+				Location cellCenter = new Location(centerLatitude, column - 180 + 0.5);
+				List<AttractionIndex.Neighbor> nearest = attractionIndex.findNearest(cellCenter, 1);
+				if (nearest.get(0).distance() <= miles + cellRadius + MARGIN) {
+					flaggedCells.set(row * COLUMNS + column);
+				}
+			}
+		}
+		return new GeofenceGrid(miles, flaggedCells);
+	}
+
+	/**
+	 * @return the radius the grid was built for, in miles
+	 */
+	public double getMiles() {
+		return miles;
+	}
+
+	/**
+	 * @return false when no attraction is within the radius of the location, true when one may be
+	 */
+	public boolean mayContain(double latitude, double longitude) {
+		int row = Math.min(ROWS - 1, Math.max(0, (int) Math.floor(latitude + 90)));
+		int column = Math.floorMod((int) Math.floor(longitude + 180), COLUMNS);
+		return flaggedCells.get(row * COLUMNS + column);
+	}
+
+	public int getFlaggedCellCount() {
+		return flaggedCells.cardinality();
+	}
+
+	public int getCellCount() {
+		return ROWS * COLUMNS;
+	}
+}
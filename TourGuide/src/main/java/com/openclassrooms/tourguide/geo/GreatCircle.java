@@ -0,0 +1,59 @@
+package com.openclassrooms.tourguide.geo;
+
+import gpsUtil.location.Location;
+
+/**
+ * Great-circle distances on the earth model used by TourGuide : a sphere with 60 nautical miles per degree.
+ * Points can be turned once into unit-sphere vectors, the squared chord between two vectors then grows
+ * with their distance and compares against a threshold computed once per radius, without any trigonometry.
+ * <p>
+ * The haversine form is used for single distances. It agrees with the spherical law of cosines within
+ * 1e-9 relative error above a mile, and is more accurate below, where acos loses half of its digits.
+ */
+public final class GreatCircle {
+	public static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+	public static final double MILES_PER_RADIAN = STATUTE_MILES_PER_NAUTICAL_MILE * 60 * Math.toDegrees(1);
+
+	private GreatCircle() {
+	}
+
+	/**
+	 * @return the great-circle distance between the two locations, in statute miles
+	 */
+	public static double miles(Location from, Location to) {
+		double lat1 = Math.toRadians(from.latitude);
+		double lat2 = Math.toRadians(to.latitude);
+		double sinHalfLat = Math.sin((lat2 - lat1) / 2);
+		double sinHalfLon = Math.sin(Math.toRadians(to.longitude - from.longitude) / 2);
+		double h = sinHalfLat * sinHalfLat + Math.cos(lat1) * Math.cos(lat2) * sinHalfLon * sinHalfLon;
+		return 2 * Math.asin(Math.min(Math.sqrt(h), 1.0)) * MILES_PER_RADIAN;
+	}
+
+	public static double[] toUnitVector(Location location) {
+		double lat = Math.toRadians(location.latitude);
+		double lon = Math.toRadians(location.longitude);
+		double cosLat = Math.cos(lat);
+		return new double[] { cosLat * Math.cos(lon), cosLat * Math.sin(lon), Math.sin(lat) };
+	}
+
+	public static double chordSquared(double[] a, double[] b) {
+		double dx = a[0] - b[0];
+		double dy = a[1] - b[1];
+		double dz = a[2] - b[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * @return the squared chord of the given distance, every distance past half the earth maps to the diameter
+	 */
+	public static double chordSquaredForMiles(double miles) {
+		double halfAngle = Math.min(miles / MILES_PER_RADIAN, Math.PI) / 2;
+		double chord = 2 * Math.sin(halfAngle);
+		return chord * chord;
+	}
+
+	public static double chordSquaredToMiles(double chordSquared) {
+		double halfChord = Math.min(Math.sqrt(chordSquared) / 2, 1.0);
+		return 2 * Math.asin(halfChord) * MILES_PER_RADIAN;
+	}
+}
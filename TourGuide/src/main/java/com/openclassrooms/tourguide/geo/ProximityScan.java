@@ -0,0 +1,14 @@
+package com.openclassrooms.tourguide.geo;
+
+/**
+ * Bulk proximity test of one query against every attraction vector
+ */
+interface ProximityScan {
+
+	/**
+	 * Writes the indexes of the points within the squared chord of the query to hits
+	 *
+	 * @return the number of hits
+	 */
+	int scan(double[] xs, double[] ys, double[] zs, double qx, double qy, double qz, double maxChordSquared, int[] hits);
+}
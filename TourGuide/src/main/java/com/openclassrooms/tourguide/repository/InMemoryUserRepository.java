@@ -0,0 +1,66 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.openclassrooms.tourguide.domain.model.User;
+
+/**
+ * Users kept in memory, indexed by name and by id.
+ * Reads are lock free : names are kept sorted in a ConcurrentSkipListMap, which also serves the pages,
+ * ids in a ConcurrentHashMap whose updates only lock the bin they touch.
+ */
+public class InMemoryUserRepository implements UserRepository {
+	private final NavigableMap<String, User> usersByName = new ConcurrentSkipListMap<>();
+	private final Map<UUID, User> usersById = new ConcurrentHashMap<>();
+
+	@Override
+	public Optional<User> findByName(String userName) {
+		return Optional.ofNullable(usersByName.get(userName));
+	}
+
+	@Override
+	public Optional<User> findById(UUID userId) {
+		return Optional.ofNullable(usersById.get(userId));
+	}
+
+	@Override
+	public boolean add(User user) {
+		// the id index is only written by the thread that won the name
+		if (usersByName.putIfAbsent(user.getUserName(), user) != null) {
+			return false;
+		}
+		if (usersById.putIfAbsent(user.getUserId(), user) != null) {
+			usersByName.remove(user.getUserName(), user);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return usersById.size();
+	}
+
+	@Override
+	public List<User> findPageAfter(String afterUserName, int limit) {
+		Map<String, User> page = afterUserName == null ? usersByName : usersByName.tailMap(afterUserName, false);
+		return page.values().stream()
+				.limit(Math.max(0, limit))
+				.toList();
+	}
+
+	/**
+	 * Splits across the hash table bins, so parallel streams divide the users without copying them
+	 */
+	@Override
+	public Spliterator<User> spliterator() {
+		return usersById.values().spliterator();
+	}
+}
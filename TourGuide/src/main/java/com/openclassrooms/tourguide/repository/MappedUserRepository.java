@@ -0,0 +1,622 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.LocationHistory;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.domain.model.UserEventListener;
+
+/**
+ * Users persisted in a local directory, and served from memory like {@link InMemoryUserRepository}.
+ * Every change is appended to a memory mapped log : added users, visited locations and rewards.
+ * The log is the source of truth : a compaction switches to a new log generation, then rebuilds the
+ * previous snapshot and the frozen logs into a new snapshot, without touching the live users.
+ * A restart maps the snapshot and replays the logs written since.
+ * <p>
+ * Only the retained location history is kept, preferences and trip deals are not persisted.
+ * Mapped pages survive a crash of the process, not of the machine, until the log is closed or rotated.
+ * <p>
+ * Changes are appended concurrently : each writer reserves its record in the log, then fills it on its own.
+ * Only growing, rotating and closing the log wait for the writers in progress, a log rotated out is forced
+ * to disk afterwards, by the compaction or the close.
+ */
+public class MappedUserRepository implements UserRepository, UserEventListener, Closeable {
+	private Logger logger = LoggerFactory.getLogger(MappedUserRepository.class);
+	public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(10);
+	private static final String SNAPSHOT_FILE = "users.snapshot";
+	private static final String LOG_PREFIX = "users-";
+	private static final String LOG_SUFFIX = ".log";
+	private static final int SNAPSHOT_MAGIC = 0x54475553;
+	private static final int LOG_MAGIC = 0x5447554c;
+	// 2 : rewards refer to their attraction by name
+	private static final int FORMAT_VERSION = 2;
+	private static final int INITIAL_LOG_BYTES = 16 << 20;
+	// a larger log is rotated, and compacted, instead of being mapped again
+	private static final int MAX_LOG_BYTES = 1 << 30;
+	private static final int SNAPSHOT_BUFFER_BYTES = 1 << 20;
+	private static final int UUID_BYTES = 16;
+	// latitude, longitude and visit time
+	private static final int LOCATION_BYTES = 8 + 8 + 8;
+	private static final byte USER_ADDED = 1;
+	private static final byte LOCATION_ADDED = 2;
+	private static final byte LOCATIONS_CLEARED = 3;
+	private static final byte REWARD_ADDED = 4;
+
+	private final Path directory;
+	private final Function<String, Optional<Attraction>> attractions;
+	private final InMemoryUserRepository users = new InMemoryUserRepository();
+	private final ReentrantLock compactionLock = new ReentrantLock();
+	private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "user-store-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// appenders share the read lock, the log fields are replaced under the write lock
+	private final ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+	// checks the names and ids of the added users, and logs them, one at a time
+	private final ReentrantLock addLock = new ReentrantLock();
+	private long logGeneration;
+	private FileChannel logChannel;
+	private MappedByteBuffer log;
+	// end of the records reserved in the log
+	private final AtomicInteger logPosition = new AtomicInteger();
+	// logs rotated out under the write lock, forced and closed outside of it
+	private final ConcurrentLinkedQueue<RetiredLog> retiredLogs = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+
+	/**
+	 * Loads the users stored in the directory, created if missing
+	 *
+	 * @param attractions resolves the attractions of the stored rewards by name, rewards of unknown attractions are dropped
+	 * @param compactionInterval delay between two compactions, zero compacts only when a log grows too large
+	 */
+	public MappedUserRepository(Path directory, Function<String, Optional<Attraction>> attractions,
+			Duration compactionInterval) throws IOException {
+		this.directory = directory;
+		this.attractions = attractions;
+		Files.createDirectories(directory);
+
+		long startedAt = System.currentTimeMillis();
+		logGeneration = load(users, Long.MAX_VALUE);
+		users.stream().forEach(user -> user.setListener(user.getListener().andThen(this)));
+		logger.info("Loaded " + users.size() + " users from " + directory + " in "
+				+ (System.currentTimeMillis() - startedAt) + " ms");
+
+		boolean replayedLogs = !logGenerations().isEmpty();
+		openLog(++logGeneration);
+		if (replayedLogs) {
+			// folds the replayed logs into the snapshot, so that the next start only maps it
+			compactor.execute(this::compactQuietly);
+		}
+		if (!compactionInterval.isZero()) {
+			compactor.scheduleWithFixedDelay(this::compactQuietly, compactionInterval.toMillis(),
+					compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public Optional<User> findByName(String userName) {
+		return users.findByName(userName);
+	}
+
+	@Override
+	public Optional<User> findById(UUID userId) {
+		return users.findById(userId);
+	}
+
+	/**
+	 * Logs the user along with the locations and rewards it already has, then follows its changes
+	 */
+	@Override
+	public boolean add(User user) {
+		addLock.lock();
+		try {
+			ensureOpen();
+			if (users.findByName(user.getUserName()).isPresent() || users.findById(user.getUserId()).isPresent()) {
+				return false;
+			}
+			byte[][] fields = userFields(user);
+			append(USER_ADDED, UUID_BYTES + fieldsBytes(fields), record -> {
+				putUuid(record, user.getUserId());
+				putFields(record, fields);
+			});
+
+			LocationHistory.Slice locations = user.getLocationHistory().between(0, Integer.MAX_VALUE);
+			for (int i = 0; i < locations.size(); i++) {
+				int location = i;
+				append(LOCATION_ADDED, UUID_BYTES + LOCATION_BYTES, record -> {
+					putUuid(record, user.getUserId());
+					record.putDouble(locations.latitudes()[location]).putDouble(locations.longitudes()[location])
+							.putLong(locations.times()[location]);
+				});
+			}
+			user.getUserRewards().forEach(reward -> appendReward(user, reward));
+			user.setListener(user.getListener().andThen(this));
+			return users.add(user);
+		} finally {
+			addLock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return users.size();
+	}
+
+	@Override
+	public List<User> findPageAfter(String afterUserName, int limit) {
+		return users.findPageAfter(afterUserName, limit);
+	}
+
+	@Override
+	public Spliterator<User> spliterator() {
+		return users.spliterator();
+	}
+
+	@Override
+	public void locationAdded(User user, VisitedLocation visitedLocation) {
+		append(LOCATION_ADDED, UUID_BYTES + LOCATION_BYTES, record -> {
+			putUuid(record, user.getUserId());
+			putLocation(record, visitedLocation);
+		});
+	}
+
+	@Override
+	public void locationsCleared(User user) {
+		append(LOCATIONS_CLEARED, UUID_BYTES, record -> putUuid(record, user.getUserId()));
+	}
+
+	@Override
+	public void rewardAdded(User user, User.UserReward userReward) {
+		appendReward(user, userReward);
+	}
+
+	private void appendReward(User user, User.UserReward userReward) {
+		byte[] attractionName = encode(userReward.attraction.attractionName);
+		append(REWARD_ADDED, UUID_BYTES + rewardBytes(attractionName), record -> {
+			putUuid(record, user.getUserId());
+			putReward(record, attractionName, userReward);
+		});
+	}
+
+	/**
+	 * Writes every change logged so far to a new snapshot, and deletes the logs it replaces.
+	 * Changes keep being logged meanwhile, into the next log generation.
+	 */
+	public void compact() throws IOException {
+		compactionLock.lock();
+		try {
+			long frozenGeneration = rotateLog();
+			closeRetiredLogs();
+			long startedAt = System.currentTimeMillis();
+			InMemoryUserRepository state = new InMemoryUserRepository();
+			load(state, frozenGeneration);
+			writeSnapshot(state, frozenGeneration);
+			for (long generation : logGenerations()) {
+				if (generation <= frozenGeneration) {
+					Files.deleteIfExists(logPath(generation));
+				}
+			}
+			logger.debug("Compacted " + state.size() + " users up to log " + frozenGeneration + " in "
+					+ (System.currentTimeMillis() - startedAt) + " ms");
+		} finally {
+			compactionLock.unlock();
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (IOException | IllegalStateException e) {
+			if (closed) {
+				// interrupted by close, the logs are left for the next start
+				logger.debug("User store compaction stopped by close");
+			} else {
+				logger.warn("User store compaction failed : " + e);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		logLock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			compactor.shutdownNow();
+			retiredLogs.add(new RetiredLog(logChannel, log));
+		} finally {
+			logLock.writeLock().unlock();
+		}
+		closeRetiredLogs();
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("User store " + directory + " is closed");
+		}
+	}
+
+	/*
+	 * Loading : the snapshot, then the logs written since, up to the given generation
+	 */
+
+	private long load(InMemoryUserRepository target, long upToGeneration) throws IOException {
+		long generation = readSnapshot(target);
+		for (long logGeneration : logGenerations()) {
+			if (logGeneration > generation && logGeneration <= upToGeneration) {
+				replayLog(target, logGeneration);
+				generation = logGeneration;
+			}
+		}
+		return generation;
+	}
+
+	private List<Long> logGenerations() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString())
+					.filter(name -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+					.map(name -> Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private Path logPath(long generation) {
+		return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+	}
+
+	/**
+	 * @return the last log generation included in the snapshot, 0 without snapshot
+	 */
+	private long readSnapshot(InMemoryUserRepository target) throws IOException {
+		Path path = directory.resolve(SNAPSHOT_FILE);
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		ByteBuffer snapshot;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (snapshot.getInt() != SNAPSHOT_MAGIC || snapshot.getInt() != FORMAT_VERSION) {
+			throw new IOException("Not a user snapshot : " + path);
+		}
+		long generation = snapshot.getLong();
+		int userCount = snapshot.getInt();
+		for (int i = 0; i < userCount; i++) {
+			User user = getUser(snapshot);
+			int locationCount = snapshot.getInt();
+			for (int j = 0; j < locationCount; j++) {
+				user.addToVisitedLocations(getLocation(snapshot, user.getUserId()));
+			}
+			int rewardCount = snapshot.getInt();
+			for (int j = 0; j < rewardCount; j++) {
+				getReward(snapshot, user.getUserId()).ifPresent(user::addUserReward);
+			}
+			target.add(user);
+		}
+		return generation;
+	}
+
+	private void replayLog(InMemoryUserRepository target, long generation) throws IOException {
+		Path path = logPath(generation);
+		ByteBuffer records;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (records.getInt() != LOG_MAGIC || records.getInt() != FORMAT_VERSION || records.getLong() != generation) {
+			throw new IOException("Not a user log : " + path);
+		}
+		while (records.remaining() >= Integer.BYTES) {
+			int length = records.getInt();
+			if (length <= 0 || length > records.remaining()) {
+				// end of the log, or a record cut short by a crash
+				break;
+			}
+			int end = records.position() + length;
+			byte type = records.get();
+			if (type == USER_ADDED) {
+				target.add(getUser(records));
+			} else {
+				UUID userId = getUuid(records);
+				Optional<User> user = target.findById(userId);
+				switch (type) {
+					case LOCATION_ADDED -> {
+						VisitedLocation visitedLocation = getLocation(records, userId);
+						user.ifPresent(u -> u.addToVisitedLocations(visitedLocation));
+					}
+					case LOCATIONS_CLEARED -> user.ifPresent(User::clearVisitedLocations);
+					case REWARD_ADDED -> {
+						Optional<User.UserReward> reward = getReward(records, userId);
+						user.ifPresent(u -> reward.ifPresent(u::addUserReward));
+					}
+					default -> logger.warn("Unknown record type " + type + " in " + path);
+				}
+			}
+			records.position(end);
+		}
+	}
+
+	/*
+	 * Writing : the log is appended through a mapped buffer, snapshots through a channel
+	 */
+
+	private void openLog(long generation) throws IOException {
+		logChannel = FileChannel.open(logPath(generation),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_LOG_BYTES);
+		log.putInt(LOG_MAGIC).putInt(FORMAT_VERSION).putLong(generation);
+		logPosition.set(log.position());
+	}
+
+	/**
+	 * Forces the logs rotated out to disk and closes them, without holding the log lock
+	 */
+	private void closeRetiredLogs() throws IOException {
+		RetiredLog retiredLog;
+		while ((retiredLog = retiredLogs.poll()) != null) {
+			try (FileChannel channel = retiredLog.channel()) {
+				retiredLog.buffer().force();
+			}
+		}
+	}
+
+	/**
+	 * @return the generation of the log rotated out, once the records reserved in it are written
+	 */
+	private long rotateLog() throws IOException {
+		logLock.writeLock().lock();
+		try {
+			ensureOpen();
+			retiredLogs.add(new RetiredLog(logChannel, log));
+			openLog(logGeneration + 1);
+			return logGeneration++;
+		} finally {
+			logLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reserves a record in the log and writes it, changes made after the store is closed are not logged
+	 *
+	 * @param payload writes the payload bytes announced from the current position of the record
+	 */
+	private void append(byte type, int payloadBytes, Consumer<ByteBuffer> payload) {
+		int recordBytes = Integer.BYTES + 1 + payloadBytes;
+		while (true) {
+			logLock.readLock().lock();
+			try {
+				if (closed) {
+					return;
+				}
+				int start = reserve(recordBytes);
+				if (start >= 0) {
+					// a view of its own, the writers never share a buffer position
+					ByteBuffer record = log.slice(start, recordBytes);
+					record.position(Integer.BYTES);
+					record.put(type);
+					payload.accept(record);
+					// the length goes last, a record cut short reads as the end of the log
+					record.putInt(0, recordBytes - Integer.BYTES);
+					return;
+				}
+			} finally {
+				logLock.readLock().unlock();
+			}
+			growLog(recordBytes);
+		}
+	}
+
+	/**
+	 * @return the start of the record, -1 when the log has no room left for it
+	 */
+	private int reserve(int recordBytes) {
+		while (true) {
+			int start = logPosition.get();
+			if (log.capacity() - start < recordBytes) {
+				return -1;
+			}
+			if (logPosition.compareAndSet(start, start + recordBytes)) {
+				return start;
+			}
+		}
+	}
+
+	private void growLog(int recordBytes) {
+		logLock.writeLock().lock();
+		try {
+			// another writer may have made room already
+			if (closed || log.capacity() - logPosition.get() >= recordBytes) {
+				return;
+			}
+			long size = Math.max(2L * log.capacity(), (long) logPosition.get() + recordBytes);
+			if (size > MAX_LOG_BYTES) {
+				rotateLog();
+				compactor.execute(this::compactQuietly);
+				return;
+			}
+			log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			logLock.writeLock().unlock();
+		}
+	}
+
+	private void writeSnapshot(InMemoryUserRepository state, long generation) throws IOException {
+		Path path = directory.resolve(SNAPSHOT_FILE);
+		Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_BYTES);
+			buffer.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(generation).putInt(state.size());
+			for (User user : (Iterable<User>) state.stream()::iterator) {
+				byte[][] fields = userFields(user);
+				buffer = ensure(channel, buffer, UUID_BYTES + fieldsBytes(fields) + Integer.BYTES);
+				putUuid(buffer, user.getUserId());
+				putFields(buffer, fields);
+
+				LocationHistory.Slice locations = user.getLocationHistory().between(0, Integer.MAX_VALUE);
+				buffer.putInt(locations.size());
+				for (int i = 0; i < locations.size(); i++) {
+					buffer = ensure(channel, buffer, LOCATION_BYTES);
+					buffer.putDouble(locations.latitudes()[i]).putDouble(locations.longitudes()[i])
+							.putLong(locations.times()[i]);
+				}
+
+				List<User.UserReward> rewards = user.getUserRewards();
+				buffer = ensure(channel, buffer, Integer.BYTES);
+				buffer.putInt(rewards.size());
+				for (User.UserReward reward : rewards) {
+					byte[] attractionName = encode(reward.attraction.attractionName);
+					buffer = ensure(channel, buffer, rewardBytes(attractionName));
+					putReward(buffer, attractionName, reward);
+				}
+			}
+			flush(channel, buffer);
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(channel, buffer);
+		}
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * Record encoding, shared by the log and the snapshot
+	 */
+
+	private static byte[][] userFields(User user) {
+		return new byte[][] { encode(user.getUserName()), encode(user.getPhoneNumber()), encode(user.getEmailAddress()) };
+	}
+
+	private static byte[] encode(String field) {
+		if (field == null) {
+			return null;
+		}
+		byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("User field too long to be stored : " + bytes.length + " bytes");
+		}
+		return bytes;
+	}
+
+	private static int fieldsBytes(byte[][] fields) {
+		int bytes = 0;
+		for (byte[] field : fields) {
+			bytes += Short.BYTES + (field == null ? 0 : field.length);
+		}
+		return bytes;
+	}
+
+	private static void putFields(ByteBuffer buffer, byte[][] fields) {
+		for (byte[] field : fields) {
+			if (field == null) {
+				buffer.putShort((short) -1);
+			} else {
+				buffer.putShort((short) field.length).put(field);
+			}
+		}
+	}
+
+	private static String getField(ByteBuffer buffer) {
+		short length = buffer.getShort();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static User getUser(ByteBuffer buffer) {
+		UUID userId = getUuid(buffer);
+		return new User(userId, getField(buffer), getField(buffer), getField(buffer));
+	}
+
+	private static void putUuid(ByteBuffer buffer, UUID id) {
+		buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+	}
+
+	private static UUID getUuid(ByteBuffer buffer) {
+		return new UUID(buffer.getLong(), buffer.getLong());
+	}
+
+	private static void putLocation(ByteBuffer buffer, VisitedLocation visitedLocation) {
+		buffer.putDouble(visitedLocation.location.latitude)
+				.putDouble(visitedLocation.location.longitude)
+				.putLong(visitedLocation.timeVisited.getTime());
+	}
+
+	private static VisitedLocation getLocation(ByteBuffer buffer, UUID userId) {
+		return new VisitedLocation(userId, new Location(buffer.getDouble(), buffer.getDouble()), new Date(buffer.getLong()));
+	}
+
+	// attraction name, visited location and points
+	private static int rewardBytes(byte[] attractionName) {
+		return fieldsBytes(new byte[][] { attractionName }) + LOCATION_BYTES + Integer.BYTES;
+	}
+
+	private static void putReward(ByteBuffer buffer, byte[] attractionName, User.UserReward reward) {
+		putFields(buffer, new byte[][] { attractionName });
+		putLocation(buffer, reward.visitedLocation);
+		buffer.putInt(reward.getRewardPoints());
+	}
+
+	private Optional<User.UserReward> getReward(ByteBuffer buffer, UUID userId) {
+		String attractionName = getField(buffer);
+		VisitedLocation visitedLocation = getLocation(buffer, userId);
+		int points = buffer.getInt();
+		return Optional.ofNullable(attractionName).flatMap(attractions)
+				.map(attraction -> new User.UserReward(visitedLocation, attraction, points));
+	}
+
+	private record RetiredLog(FileChannel channel, MappedByteBuffer buffer) {
+	}
+}
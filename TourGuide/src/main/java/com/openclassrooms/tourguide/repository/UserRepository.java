@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.openclassrooms.tourguide.domain.model.User;
+
+/**
+ * Thread safe store of the users, shared by the controllers, the services and the tracker.
+ * Iteration is weakly consistent : it never copies the store and never fails on concurrent updates.
+ */
+public interface UserRepository {
+
+	Optional<User> findByName(String userName);
+
+	Optional<User> findById(UUID userId);
+
+	/**
+	 * Adds the user unless one with the same name or id is already stored
+	 *
+	 * @return true if the user was added
+	 */
+	boolean add(User user);
+
+	int size();
+
+	/**
+	 * Page of users in name order, starting after a cursor : users added meanwhile never shift the next pages,
+	 * they are listed by the page covering their name
+	 *
+	 * @param afterUserName name of the last user of the previous page, null for the first page
+	 */
+	default List<User> findPageAfter(String afterUserName, int limit) {
+		return stream()
+				.filter(user -> afterUserName == null || user.getUserName().compareTo(afterUserName) > 0)
+				.sorted(Comparator.comparing(User::getUserName))
+				.limit(Math.max(0, limit))
+				.toList();
+	}
+
+	Spliterator<User> spliterator();
+
+	default Stream<User> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	default Stream<User> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+}
@@ -0,0 +1,23 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.UUID;
+
+/**
+ * Compact (attraction, user) cache key, the two UUIDs are kept as raw bits
+ */
+public record RewardKey(long attractionMostSigBits, long attractionLeastSigBits,
+						long userMostSigBits, long userLeastSigBits) {
+
+	public static RewardKey of(UUID attractionId, UUID userId) {
+		return new RewardKey(attractionId.getMostSignificantBits(), attractionId.getLeastSignificantBits(),
+				userId.getMostSignificantBits(), userId.getLeastSignificantBits());
+	}
+
+	public UUID attractionId() {
+		return new UUID(attractionMostSigBits, attractionLeastSigBits);
+	}
+
+	public UUID userId() {
+		return new UUID(userMostSigBits, userLeastSigBits);
+	}
+}
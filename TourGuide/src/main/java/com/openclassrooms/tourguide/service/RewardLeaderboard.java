@@ -0,0 +1,133 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.domain.model.UserEventListener;
+
+/**
+ * Users with the most reward points, kept sorted as rewards are granted, so that reading the top never scans the users.
+ * Only the top of the board is retained : reward totals never decrease, a user pushed out of it
+ * comes back with the reward that brings it above the last retained user.
+ * Reads never block, and are weakly consistent with the rewards granted meanwhile.
+ */
+public class RewardLeaderboard implements UserEventListener {
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private final int capacity;
+	// highest points first
+	private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>();
+	// entry of each retained user, updated under the bin lock of the user so that its updates never interleave
+	private final ConcurrentMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	public RewardLeaderboard() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity number of users retained, the longest top that can be read
+	 */
+	public RewardLeaderboard(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Leaderboard capacity must be positive : " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public void rewardAdded(User user, User.UserReward userReward) {
+		offer(user);
+	}
+
+	/**
+	 * Ranks the user with its current reward points, unless they are too few for the board
+	 */
+	public void offer(User user) {
+		long points = user.getRewardPoints();
+		if (points <= 0 || isBelowRetained(points)) {
+			return;
+		}
+		entries.compute(user.getUserId(), (userId, previous) -> {
+			if (previous != null && previous.points() >= points) {
+				// a concurrent reward of the user was ranked first
+				return previous;
+			}
+			Entry entry = new Entry(points, userId, user.getUserName());
+			ranking.add(entry);
+			if (previous == null) {
+				size.incrementAndGet();
+			} else {
+				ranking.remove(previous);
+			}
+			return entry;
+		});
+		if (size.get() > capacity) {
+			trim();
+		}
+	}
+
+	// a retained user always has at least the points of its entry, so it is never rejected here
+	private boolean isBelowRetained(long points) {
+		if (size.get() < capacity) {
+			return false;
+		}
+		// the iterator holds the element it found, unlike last() it never fails on a ranking emptied meanwhile
+		Iterator<Entry> lowest = ranking.descendingIterator();
+		return lowest.hasNext() && points < lowest.next().points();
+	}
+
+	private synchronized void trim() {
+		while (size.get() > capacity) {
+			Entry lowest = ranking.pollLast();
+			if (lowest == null) {
+				return;
+			}
+			// fails when the user was ranked again meanwhile, its new entry is then still in the ranking
+			if (entries.remove(lowest.userId(), lowest)) {
+				size.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @param limit number of users returned, at most the capacity of the board
+	 * @return the users with the most points, highest first
+	 */
+	public List<Entry> top(int limit) {
+		int length = Math.max(0, Math.min(limit, capacity));
+		List<Entry> top = new ArrayList<>(length);
+		// a user being ranked again can briefly have two entries, the highest one is kept
+		Set<UUID> listedUsers = new HashSet<>();
+		for (Entry entry : ranking) {
+			if (top.size() == length) {
+				break;
+			}
+			if (listedUsers.add(entry.userId())) {
+				top.add(entry);
+			}
+		}
+		return top;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public record Entry(long points, UUID userId, String userName) implements Comparable<Entry> {
+		@Override
+		public int compareTo(Entry other) {
+			int byPoints = Long.compare(other.points, points);
+			return byPoints != 0 ? byPoints : userId.compareTo(other.userId);
+		}
+	}
+}
@@ -1,114 +1,315 @@
 package com.openclassrooms.tourguide.service;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.springframework.stereotype.Service;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.client.RewardCentralClient;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.domain.model.LocationHistory;
 import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.GeofenceGrid;
+import com.openclassrooms.tourguide.geo.GreatCircle;
 
-@Service
-public class RewardsService {
-    private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
-	private static final ForkJoinPool forkJoinPool = new ForkJoinPool(64);
-	private static final int BATCH_SIZE = 1000;
+/**
+ * Declared as a bean in TourGuideModule, reward passes and the reward points cache are measured once bound
+ * to a meter registry
+ */
+public class RewardsService implements MeterBinder {
+	public static final long DEFAULT_REWARD_CACHE_SIZE = 500_000;
+	public static final Duration DEFAULT_REWARD_CACHE_TTL = Duration.ofHours(1);
+	private static final int USER_GEOFENCE_CACHE_SIZE = 64;
+	// a grid this wide flags every cell, larger radii share it
+	private static final int WHOLE_EARTH_MILES = (int) Math.ceil(Math.PI * GreatCircle.MILES_PER_RADIAN);
 
 	// proximity in miles
 	private int attractionProximityRange = 200;
+	private final double attractionProximityChordSquared = GreatCircle.chordSquaredForMiles(attractionProximityRange);
 	private int defaultProximityBuffer = 10;
-	private int proximityBuffer = defaultProximityBuffer;
+	private volatile int proximityBuffer = defaultProximityBuffer;
+	// bumped on every radius change so that users get their whole history evaluated again
+	private volatile int proximityGeneration;
+	private volatile boolean vectorizedProximity;
+	// rebuilt with every radius change, the grid carries the radius it was built for
+	private volatile GeofenceGrid geofence;
+	// grids of the radius buckets users fall in, built once and shared by every user of the bucket : there are
+	// fewer buckets than cache entries, so a grid is never built twice
+	private final Cache<Integer, GeofenceGrid> userGeofences = Caffeine.newBuilder()
+			.maximumSize(USER_GEOFENCE_CACHE_SIZE)
+			.build();
 
 	private final GpsUtil gpsUtil;
-	private final RewardCentral rewardsCentral;
-	private final List<Attraction> cachedAttractions;
-	private final Map<String, Integer> rewardCache = new ConcurrentHashMap<>();
+	private final RewardCentralClient rewardCentralClient;
+	private final TourGuideExecutor executor;
+	private final AttractionIndex attractionIndex;
+	// W-TinyLFU bounded cache, reward points do not change often so a long TTL is fine
+	private final Cache<RewardKey, Integer> rewardCache;
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+	private final LongAdder geofenceRejections = new LongAdder();
+	private final Timer calculationTimer = Timer.builder("tourguide.rewards.calculation")
+			.description("Duration of a user reward pass")
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.publishPercentileHistogram()
+			.register(meterRegistry);
 
 	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral) {
+		this(gpsUtil, rewardCentral, TourGuideExecutor.defaults());
+	}
+
+	private RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral, TourGuideExecutor executor) {
+		this(gpsUtil, new RewardCentralClient(rewardCentral, executor, RewardCentralClient.DEFAULT_BATCH_WINDOW),
+				executor, DEFAULT_REWARD_CACHE_SIZE, DEFAULT_REWARD_CACHE_TTL);
+	}
+
+	public RewardsService(GpsUtil gpsUtil, RewardCentralClient rewardCentralClient, TourGuideExecutor executor,
+						  long rewardCacheMaximumSize, Duration rewardCacheTtl) {
 		this.gpsUtil = gpsUtil;
-		this.rewardsCentral = rewardCentral;
-		cachedAttractions = gpsUtil.getAttractions();
+		this.rewardCentralClient = rewardCentralClient;
+		this.executor = executor;
+		attractionIndex = AttractionIndex.of(gpsUtil.getAttractions());
+		geofence = GeofenceGrid.of(attractionIndex, proximityBuffer);
+		rewardCache = Caffeine.newBuilder()
+				.maximumSize(rewardCacheMaximumSize)
+				.expireAfterWrite(rewardCacheTtl)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, rewardCache, "rewardPoints");
+		Gauge.builder("tourguide.rewards.cache.hit.ratio", rewardCache, cache -> cache.stats().hitRate())
+				.description("Share of reward point lookups answered by the cache")
+				.register(meterRegistry);
+		FunctionCounter.builder("tourguide.rewards.geofence.rejected", geofenceRejections, LongAdder::sum)
+				.description("Locations rejected by the geofence grid, without any distance computed")
+				.register(meterRegistry);
+		Gauge.builder("tourguide.rewards.geofence.grids", this, RewardsService::getUserGeofenceCount)
+				.description("Geofence grids built for the radius buckets of the users")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		meterRegistry.add(registry);
+	}
+
+	public TourGuideExecutor getExecutor() {
+		return executor;
+	}
+
+	public AttractionIndex getAttractionIndex() {
+		return attractionIndex;
 	}
 	
-	public void setProximityBuffer(int proximityBuffer) {
+	public synchronized void setProximityBuffer(int proximityBuffer) {
+		geofence = GeofenceGrid.of(attractionIndex, proximityBuffer);
 		this.proximityBuffer = proximityBuffer;
+		proximityGeneration++;
 	}
 	
+	/**
+	 * Switches the reward passes to the Vector API proximity scan
+	 *
+	 * @return false when the JVM was started without the jdk.incubator.vector module, the tree is then kept
+	 */
+	public boolean setVectorizedProximity(boolean vectorizedProximity) {
+		this.vectorizedProximity = vectorizedProximity && AttractionIndex.isVectorApiAvailable();
+		return this.vectorizedProximity == vectorizedProximity;
+	}
+
+	public boolean isVectorizedProximity() {
+		return vectorizedProximity;
+	}
+
+	/**
+	 * @return a geofence for the radius : the one of the proximity buffer, or the one of the radius bucket,
+	 * built for the upper bound of the bucket so that it never rejects a location within the radius
+	 */
+	private GeofenceGrid geofenceFor(int radius, GeofenceGrid geofence) {
+		return radius == geofence.getMiles() ? geofence
+				: userGeofences.get(geofenceBucket(radius), miles -> GeofenceGrid.of(attractionIndex, miles));
+	}
+
+	/**
+	 * @return the upper bound of the bucket of the radius : the powers of two and the midpoints between them,
+	 * about 30 buckets up to the radius flagging the whole earth
+	 */
+	static int geofenceBucket(int radius) {
+		int miles = Math.min(Math.max(radius, 0), WHOLE_EARTH_MILES);
+		if (miles <= 2) {
+			return miles;
+		}
+		int power = Integer.highestOneBit(miles);
+		if (miles == power) {
+			return miles;
+		}
+		int midpoint = power + power / 2;
+		return miles <= midpoint ? midpoint : 2 * power;
+	}
+
+	/**
+	 * @return grids built for the radius buckets of the users, the proximity buffer grid aside
+	 */
+	public long getUserGeofenceCount() {
+		return userGeofences.estimatedSize();
+	}
+
 	public void setDefaultProximityBuffer() {
-		proximityBuffer = defaultProximityBuffer;
+		setProximityBuffer(defaultProximityBuffer);
 	}
 	public long getProximityBuffer() {
 		return proximityBuffer;
 	}
 	
+	/**
+	 * Rewards the user for the attractions near the locations visited since the previous pass.
+	 * The user's radius is their attraction proximity when set, the proximity buffer otherwise.
+	 * Locations outside the geofence grid are skipped, the others are tested against the attraction index.
+	 * The reward points of the new attractions are looked up concurrently.
+	 * When a lookup fails, the rewards found are still granted and the locations are left to the next pass.
+	 */
 	public void calculateRewards(User user) {
-		List<VisitedLocation> userLocations = new ArrayList<>(user.getVisitedLocations());
-		Set<String> rewardedAttractions = new HashSet<>();
-
-		for (VisitedLocation visitedLocation : userLocations) {
-			for (Attraction attraction : cachedAttractions) {
-
-				if (!rewardedAttractions.contains(attraction.attractionName)
-						&& nearAttraction(visitedLocation, attraction))
-				{
-					String cacheKey = attraction.attractionId + "_" + user.getUserId();
-					int points = rewardCache.computeIfAbsent(cacheKey, k ->
-							     rewardsCentral.getAttractionRewardPoints(
-										 attraction.attractionId, user.getUserId()
-								 ));
-					user.addUserReward(new User.UserReward(visitedLocation, attraction, points));
-					rewardedAttractions.add(attraction.attractionName);
+		calculationTimer.record(() -> calculateNewRewards(user));
+	}
+
+	private void calculateNewRewards(User user) {
+		int generation = proximityGeneration;
+		// the default grid carries the proximity buffer it was built for
+		GeofenceGrid defaultGeofence = this.geofence;
+		int attractionProximity = user.getUserPreferences().getAttractionProximity();
+		int radius = attractionProximity != User.UserPreferences.DEFAULT_ATTRACTION_PROXIMITY ? attractionProximity
+				: (int) defaultGeofence.getMiles();
+		GeofenceGrid geofence = geofenceFor(radius, defaultGeofence);
+		LocationHistory history = user.getLocationHistory();
+		int locationCount = history.appendedCount();
+		// a new radius, for everyone or for this user only, evaluates the whole history again
+		long proximity = ((long) generation << 32) | (radius & 0xffffffffL);
+		int from = user.claimLocationsToReward(proximity, locationCount);
+
+		LocationHistory.Slice locations = history.between(from, locationCount);
+		// only the locations the geofence cannot rule out are tested against the attractions
+		double[] latitudes = locations.latitudes();
+		double[] longitudes = locations.longitudes();
+		int[] candidates = new int[latitudes.length];
+		int candidateCount = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (geofence.mayContain(latitudes[i], longitudes[i])) {
+				candidates[candidateCount++] = i;
+			}
+		}
+		geofenceRejections.add(latitudes.length - candidateCount);
+		if (candidateCount == 0) {
+			return;
+		}
+		double[] candidateLatitudes = new double[candidateCount];
+		double[] candidateLongitudes = new double[candidateCount];
+		for (int i = 0; i < candidateCount; i++) {
+			candidateLatitudes[i] = latitudes[candidates[i]];
+			candidateLongitudes[i] = longitudes[candidates[i]];
+		}
+		List<List<Attraction>> nearby = attractionIndex.findWithin(candidateLatitudes, candidateLongitudes,
+				radius, vectorizedProximity);
+
+		Map<String, CompletableFuture<User.UserReward>> newRewards = new LinkedHashMap<>();
+		for (int i = 0; i < nearby.size(); i++) {
+			if (nearby.get(i).isEmpty()) {
+				continue;
+			}
+			VisitedLocation visitedLocation = locations.get(candidates[i]);
+			for (Attraction attraction : nearby.get(i)) {
+
+				if (!user.hasRewardFor(attraction.attractionName) && !newRewards.containsKey(attraction.attractionName)) {
+					newRewards.put(attraction.attractionName, getRewardPointsAsync(attraction, user.getUserId())
+							.thenApply(points -> new User.UserReward(visitedLocation, attraction, points)));
 				}
 			}
 		}
+		RuntimeException failure = null;
+		for (CompletableFuture<User.UserReward> reward : newRewards.values()) {
+			try {
+				user.addUserReward(reward.join());
+			} catch (CompletionException | CancellationException e) {
+				failure = failure == null ? e : failure;
+			}
+		}
+		if (failure != null) {
+			// the next pass evaluates these locations again, the rewards granted here are not granted twice
+			user.releaseLocationsToReward(proximity, from);
+			throw failure;
+		}
 	}
 	public void calculateRewardsForMultipleUsers(List<User> users) {
-		for (int batch = 0; batch < users.size(); batch += BATCH_SIZE) {
-			int end = Math.min(batch + BATCH_SIZE, users.size());
-			List<User> batchUsers = users.subList(batch, end);
-
-			List<CompletableFuture<Void>> futures = batchUsers.stream()
-					.map(user ->
-							CompletableFuture.runAsync(() ->
-							calculateRewards(user), forkJoinPool))
-					.toList();
-			CompletableFuture.allOf(
-					futures.toArray(new CompletableFuture[0]))
-					.join();
-		}
+		List<CompletableFuture<Void>> futures = users.stream()
+				.map(user -> executor.runAsync(() -> calculateRewards(user)))
+				.toList();
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 	}
 	
 	public boolean isWithinAttractionProximity(Attraction attraction, Location location) {
-		return getDistance(attraction, location) <= attractionProximityRange;
+		return attractionIndex.isWithin(attraction, location, attractionProximityChordSquared);
 	}
 	
-	private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-		return getDistance(attraction, visitedLocation.location) <= proximityBuffer;
+	public int getRewardPoints(Attraction attraction, UUID userId) {
+		return getRewardPointsAsync(attraction, userId).join();
 	}
 
-	public int getRewardPoints(Attraction attraction, UUID userId) {
-		return rewardsCentral.getAttractionRewardPoints(attraction.attractionId, userId);
+	public CompletableFuture<Integer> getRewardPointsAsync(Attraction attraction, UUID userId) {
+		// no Cache.get(key, loader) : the loader would hold a map lock during the remote call
+		RewardKey key = RewardKey.of(attraction.attractionId, userId);
+		Integer points = rewardCache.getIfPresent(key);
+		if (points != null) {
+			return CompletableFuture.completedFuture(points);
+		}
+		return rewardCentralClient.getAttractionRewardPoints(attraction.attractionId, userId)
+				.thenApply(loadedPoints -> {
+					rewardCache.put(key, loadedPoints);
+					return loadedPoints;
+				});
 	}
-	
-	public double getDistance(Location loc1, Location loc2) {
-        double lat1 = Math.toRadians(loc1.latitude);
-        double lon1 = Math.toRadians(loc1.longitude);
-        double lat2 = Math.toRadians(loc2.latitude);
-        double lon2 = Math.toRadians(loc2.longitude);
 
-        double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-                               + Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+	public RewardCentralClient getRewardCentralClient() {
+		return rewardCentralClient;
+	}
+
+	/**
+	 * @return hit, miss and eviction counters of the reward points cache
+	 */
+	public CacheStats getRewardCacheStats() {
+		return rewardCache.stats();
+	}
 
-        double nauticalMiles = 60 * Math.toDegrees(angle);
-        return STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
+	public long getRewardCacheSize() {
+		return rewardCache.estimatedSize();
+	}
+	
+	/**
+	 * @return the great-circle distance in statute miles, see {@link GreatCircle} for the accuracy.
+	 * The precomputed vectors do not make a single distance cheaper, its asin costs as much as the haversine :
+	 * proximity tests go through {@link #isWithinAttractionProximity}, which compares chords without it.
+	 */
+	public double getDistance(Location loc1, Location loc2) {
+		return GreatCircle.miles(loc1, loc2);
 	}
 
 	public void shutdown() {
-		forkJoinPool.shutdown();
+		rewardCentralClient.shutdown();
+		executor.shutdown();
 	}
 
 }
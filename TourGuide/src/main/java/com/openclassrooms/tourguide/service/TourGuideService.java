@@ -1,21 +1,50 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.concurrent.Downstream;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
 import com.openclassrooms.tourguide.util.InternalTestHelper;
+import com.openclassrooms.tourguide.domain.dto.IngestResultDTO;
+import com.openclassrooms.tourguide.domain.dto.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.domain.dto.LocationReportDTO;
 import com.openclassrooms.tourguide.domain.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.domain.dto.UserResultDTO;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.repository.UserRepository;
+import com.openclassrooms.tourguide.tracking.LocationIngest;
+import com.openclassrooms.tourguide.tracking.LocationSnapshot;
+import com.openclassrooms.tourguide.tracking.RewardPipeline;
 import com.openclassrooms.tourguide.tracking.Tracker;
+import com.openclassrooms.tourguide.domain.model.LocationHistory;
 import com.openclassrooms.tourguide.domain.model.User;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
 import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
@@ -25,116 +54,378 @@ import tripPricer.Provider;
 import tripPricer.TripPricer;
 
 @Service
-public class TourGuideService {
+public class TourGuideService implements MeterBinder {
 	private Logger logger = LoggerFactory.getLogger(TourGuideService.class);
-	private static final ForkJoinPool forkJoinPool = new ForkJoinPool(64);
+	private static final int NEARBY_ATTRACTIONS_LIMIT = 5;
+	private static final int TRIP_DEALS_LIMIT = 10;
+	// users evaluated concurrently by the bulk methods, only this many results are held at once
+	private static final int USER_BATCH_WINDOW = 256;
+	// trip prices are memoized per range of reward points
+	private static final int REWARD_POINTS_BUCKET = 100;
+	private static final Duration TRIP_PRICING_CACHE_TTL = Duration.ofMinutes(1);
 
 	private final GpsUtil gpsUtil;
 	private final RewardsService rewardsService;
-	private final TripPricer tripPricer = new TripPricer();
+	private final TourGuideExecutor executor;
+	private final TripPricer tripPricer;
+	private final Cache<TripPricingKey, List<Provider>> tripPricingCache = Caffeine.newBuilder()
+			.maximumSize(100_000)
+			.expireAfterWrite(TRIP_PRICING_CACHE_TTL)
+			.build();
+	private final RewardLeaderboard rewardLeaderboard = new RewardLeaderboard();
+	private final RewardPipeline rewardPipeline;
+	private final LocationIngest locationIngest;
 	public final Tracker tracker;
 	boolean testMode = true;
 
 	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService) {
+		this(gpsUtil, rewardsService, rewardsService.getExecutor());
+	}
+
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideExecutor executor) {
+		this(gpsUtil, rewardsService, executor, new TripPricer());
+	}
+
+	@Autowired
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideExecutor executor,
+							UserRepository userRepository) {
+		this(gpsUtil, rewardsService, executor, new TripPricer(), userRepository);
+	}
+
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideExecutor executor,
+							TripPricer tripPricer) {
+		this(gpsUtil, rewardsService, executor, tripPricer, new InMemoryUserRepository());
+	}
+
+	/**
+	 * Internal test users are only generated when the repository starts empty
+	 */
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideExecutor executor,
+							TripPricer tripPricer, UserRepository userRepository) {
 		this.gpsUtil = gpsUtil;
 		this.rewardsService = rewardsService;
+		this.executor = executor;
+		this.tripPricer = tripPricer;
+		this.userRepository = userRepository;
 
 		Locale.setDefault(Locale.US);
 
 		if (testMode) {
 			logger.info("TestMode enabled");
 		}
-		logger.debug("Initializing users");
-		initializeInternalUsers();
-		logger.debug("Finished initializing users");
+		if (userRepository.size() == 0) {
+			logger.debug("Initializing users");
+			initializeInternalUsers();
+			logger.debug("Finished initializing users");
+		} else {
+			logger.debug("Using the " + userRepository.size() + " stored users");
+			userRepository.stream().forEach(this::followRewards);
+		}
+		rewardPipeline = new RewardPipeline(rewardsService, executor);
+		locationIngest = new LocationIngest(rewardPipeline);
 		tracker = new Tracker(this);
 		addShutDownHook();
 	}
 
+	/**
+	 * Publishes the tracker metrics, the executor and the rewards service are bound as beans of their own
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		tracker.bindTo(registry);
+		rewardPipeline.bindTo(registry);
+		locationIngest.bindTo(registry);
+	}
+
+	public RewardPipeline getRewardPipeline() {
+		return rewardPipeline;
+	}
+
+	public TourGuideExecutor getExecutor() {
+		return executor;
+	}
+
 	public List<User.UserReward> getUserRewards(User user) {
 		return user.getUserRewards();
 	}
 
 	public VisitedLocation getUserLocation(User user) {
-		if (user.getVisitedLocations().isEmpty()) {
+		if (!user.hasVisitedLocations()) {
 			return trackUserLocation(user);
 		}
 		return user.getLastVisitedLocation();
 	}
 
+	/**
+	 * Only goes through the executor when the location has to be tracked first
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocationAsync(User user) {
+		if (!user.hasVisitedLocations()) {
+			return executor.supplyAsync(() -> trackUserLocation(user));
+		}
+		return CompletableFuture.completedFuture(user.getLastVisitedLocation());
+	}
+
+	/**
+	 * @return the last known locations published by the tracker, nothing is tracked on the way
+	 */
+	public LocationSnapshot getLocationSnapshot() {
+		return tracker.getLocationSnapshot();
+	}
+
 	public User getUser(String userName) {
-		return internalUserMap.get(userName);
+		return userRepository.findByName(userName).orElse(null);
 	}
 
+	public User getUser(UUID userId) {
+		return userRepository.findById(userId).orElse(null);
+	}
+
+	/**
+	 * @return a copy of every user, prefer {@link #getUserRepository()} to iterate without copying
+	 */
 	public List<User> getAllUsers() {
-		return internalUserMap.values().stream().toList();
+		return userRepository.stream().toList();
+	}
+
+	public UserRepository getUserRepository() {
+		return userRepository;
 	}
 
 	public void addUser(User user) {
-		if (!internalUserMap.containsKey(user.getUserName())) {
-			internalUserMap.put(user.getUserName(), user);
+		if (userRepository.add(user)) {
+			followRewards(user);
+			tracker.follow(user);
+		}
+	}
+
+	// listens first, so that a reward granted while the user is ranked is ranked again
+	private void followRewards(User user) {
+		user.setListener(user.getListener().andThen(rewardLeaderboard));
+		rewardLeaderboard.offer(user);
+	}
+
+	/**
+	 * @return the users with the most reward points, read from the leaderboard kept as rewards are granted
+	 */
+	public List<LeaderboardEntryDTO> getRewardLeaderboard(int limit) {
+		List<RewardLeaderboard.Entry> top = rewardLeaderboard.top(limit);
+		List<LeaderboardEntryDTO> leaderboard = new ArrayList<>(top.size());
+		for (int i = 0; i < top.size(); i++) {
+			leaderboard.add(new LeaderboardEntryDTO(i + 1, top.get(i).userName(), top.get(i).points()));
+		}
+		return leaderboard;
+	}
+
+	/**
+	 * Evaluates the users concurrently, one window at a time, and hands the results over in the users order.
+	 * A failed evaluation is reported as an error for that user only.
+	 */
+	public <T> void evaluateUsers(Iterator<User> users, Function<User, CompletableFuture<T>> evaluation,
+								  Consumer<UserResultDTO<T>> consumer) {
+		List<User> window = new ArrayList<>(USER_BATCH_WINDOW);
+		List<CompletableFuture<T>> results = new ArrayList<>(USER_BATCH_WINDOW);
+		while (users.hasNext()) {
+			window.clear();
+			results.clear();
+			while (users.hasNext() && window.size() < USER_BATCH_WINDOW) {
+				User user = users.next();
+				window.add(user);
+				results.add(evaluateUser(user, evaluation));
+			}
+			for (int i = 0; i < window.size(); i++) {
+				String userName = window.get(i).getUserName();
+				try {
+					consumer.accept(new UserResultDTO<>(userName, results.get(i).join(), null));
+				} catch (CompletionException e) {
+					consumer.accept(new UserResultDTO<>(userName, null, e.getCause().getMessage()));
+				} catch (CancellationException e) {
+					consumer.accept(new UserResultDTO<>(userName, null, "Evaluation cancelled"));
+				}
+			}
+		}
+	}
+
+	private <T> CompletableFuture<T> evaluateUser(User user, Function<User, CompletableFuture<T>> evaluation) {
+		try {
+			return evaluation.apply(user);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
 		}
 	}
 
 	public List<Provider> getTripDeals(User user) {
+		return getTripDealsAsync(user).join();
+	}
+
+	/**
+	 * Never blocks a worker of the executor : the pricing calls complete the deals as they come back
+	 */
+	public CompletableFuture<List<Provider>> getTripDealsAsync(User user) {
 		// Ensure user has at least one visited location
-		if (user.getVisitedLocations().isEmpty()) {
-			trackUserLocation(user);
+		return getUserLocationAsync(user)
+				// the sum of all points is kept by the user
+				.thenCompose(visitedLocation -> getProvidersPerAttraction(user, (int) user.getRewardPoints()))
+				.thenApply(providers -> {
+					user.setTripDeals(providers);
+					return providers;
+				});
+	}
+
+	/**
+	 * Prices every attraction concurrently and completes as soon as enough providers are available,
+	 * the pricing calls still in flight are then cancelled, the ones getting a permit afterwards are skipped
+	 */
+	private CompletableFuture<List<Provider>> getProvidersPerAttraction(User user, int cumulativeRewardPoints) {
+		User.UserPreferences preferences = user.getUserPreferences();
+		// guarded by itself, filled by the pricing calls as they complete
+		List<Provider> providers = new ArrayList<>();
+		CompletableFuture<List<Provider>> deals = new CompletableFuture<>();
+		List<Attraction> attractionsToPrice = new ArrayList<>();
+		for (Attraction attraction : rewardsService.getAttractionIndex().getAttractions()) {
+			List<Provider> cached = tripPricingCache.getIfPresent(tripPricingKey(attraction, preferences, cumulativeRewardPoints));
+			if (cached != null) {
+				providers.addAll(cached);
+			} else {
+				attractionsToPrice.add(attraction);
+			}
+		}
+		if (providers.size() >= TRIP_DEALS_LIMIT || attractionsToPrice.isEmpty()) {
+			return CompletableFuture.completedFuture(firstDeals(providers));
 		}
-		// get the sum of all points
-		int cumulativeRewardPoints = user.getUserRewards().stream()
-				                          .mapToInt(User.UserReward::getRewardPoints)
-				                          .sum();
-
-		// get all the providers for each attraction
-		List<Provider> allProviders = getProvidersPerAttraction(user, cumulativeRewardPoints);
-		// limit results to 10 each time
-		List<Provider> providers = allProviders.stream()
-						.limit(10)
-						.toList();
-
-		user.setTripDeals(providers);
-		return providers;
-	}
-
-	private List<Provider> getProvidersPerAttraction(User user, int cumulativeRewardPoints)  {
-		List<Provider> allProviders = new ArrayList<>();
-		List<Attraction> attractions = gpsUtil.getAttractions();
-		attractions.forEach(attraction -> {
-			List<Provider> result = tripPricer.getPrice(
-					tripPricerApiKey,
-					attraction.attractionId,
-					user.getUserPreferences().getNumberOfAdults(),
-					user.getUserPreferences().getNumberOfChildren(),
-					user.getUserPreferences().getTripDuration(),
-					cumulativeRewardPoints);
-			allProviders.addAll(result);
+
+		// a call may get the permit released by a cancelled one before being interrupted itself
+		AtomicBoolean enoughProviders = new AtomicBoolean();
+		AtomicInteger pendingCalls = new AtomicInteger(attractionsToPrice.size());
+		List<Future<?>> pricingCalls = new ArrayList<>();
+		for (Attraction attraction : attractionsToPrice) {
+			TripPricingKey key = tripPricingKey(attraction, preferences, cumulativeRewardPoints);
+			pricingCalls.add(executor.getExecutorService().submit(() -> {
+				try {
+					List<Provider> result = executor.call(Downstream.TRIP_PRICER, () -> {
+						if (enoughProviders.get()) {
+							throw new CancellationException("Enough providers were found");
+						}
+						return tripPricer.getPrice(
+								tripPricerApiKey,
+								attraction.attractionId,
+								preferences.getNumberOfAdults(),
+								preferences.getNumberOfChildren(),
+								preferences.getTripDuration(),
+								cumulativeRewardPoints);
+					});
+					tripPricingCache.put(key, result);
+					synchronized (providers) {
+						providers.addAll(result);
+						if (providers.size() >= TRIP_DEALS_LIMIT) {
+							deals.complete(firstDeals(providers));
+						}
+					}
+				} catch (CancellationException e) {
+					// skipped once enough providers were found
+				} catch (RuntimeException e) {
+					logger.warn("Trip pricing failed : " + e.getMessage());
+				} finally {
+					if (pendingCalls.decrementAndGet() == 0) {
+						synchronized (providers) {
+							deals.complete(firstDeals(providers));
+						}
+					}
+				}
+			}));
+		}
+		// registered once every call is submitted, runs at once when the deals are already complete
+		deals.whenComplete((result, error) -> {
+			enoughProviders.set(true);
+			pricingCalls.forEach(call -> call.cancel(true));
 		});
-		return allProviders;
+		return deals;
+	}
+
+	private static TripPricingKey tripPricingKey(Attraction attraction, User.UserPreferences preferences,
+			int cumulativeRewardPoints) {
+		return new TripPricingKey(attraction.attractionId,
+				preferences.getNumberOfAdults(),
+				preferences.getNumberOfChildren(),
+				preferences.getTripDuration(),
+				cumulativeRewardPoints / REWARD_POINTS_BUCKET);
+	}
+
+	private static List<Provider> firstDeals(List<Provider> providers) {
+		return providers.stream()
+				.limit(TRIP_DEALS_LIMIT)
+				.toList();
 	}
 
 	public void trackAllUsersLocations(List<User> users) {
 		List<CompletableFuture<Void>> futures = users.stream()
-				.map(user -> CompletableFuture.runAsync(() ->
-						trackUserLocation(user), forkJoinPool))
+				.map(user -> executor.runAsync(() -> trackUserLocation(user)))
 				.toList();
 		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 	}
 
+	/**
+	 * Tracks the location and rewards the user before returning
+	 */
 	public VisitedLocation trackUserLocation(User user) {
+		VisitedLocation visitedLocation = locateUser(user);
+		rewardsService.calculateRewards(user);
+		return visitedLocation;
+	}
+
+	/**
+	 * Tracks the location and leaves the rewards to the reward pipeline, used by the tracker
+	 */
+	public VisitedLocation recordUserLocation(User user) {
+		VisitedLocation visitedLocation = locateUser(user);
+		rewardPipeline.publish(user);
+		return visitedLocation;
+	}
+
+	/**
+	 * Appends positions reported by the clients, without calling GpsUtil.
+	 * Each user's positions are appended as one group, and rewarded once by the reward pipeline.
+	 */
+	public IngestResultDTO ingestLocations(List<LocationReportDTO> reports) {
+		Map<UUID, User> users = new HashMap<>();
+		int rejected = 0;
+		for (LocationReportDTO report : reports) {
+			User user = report.userId == null ? null : users.computeIfAbsent(report.userId, this::getUser);
+			if (user == null || !isValidCoordinate(report.latitude, 90) || !isValidCoordinate(report.longitude, 180)) {
+				rejected++;
+				continue;
+			}
+			locationIngest.submit(user, new VisitedLocation(user.getUserId(),
+					new Location(report.latitude, report.longitude), new Date(report.timestamp)));
+		}
+		users.values().forEach(locationIngest::drain);
+		return new IngestResultDTO(reports.size() - rejected, rejected);
+	}
+
+	private static boolean isValidCoordinate(double degrees, double limit) {
+		return degrees >= -limit && degrees <= limit;
+	}
+
+	private VisitedLocation locateUser(User user) {
 		VisitedLocation visitedLocation;
-		if (user.getVisitedLocations().isEmpty()) {
-			visitedLocation = gpsUtil.getUserLocation(user.getUserId());
+		if (!user.hasVisitedLocations()) {
+			visitedLocation = executor.call(Downstream.GPS_UTIL, () -> gpsUtil.getUserLocation(user.getUserId()));
 			user.addToVisitedLocations(visitedLocation);
 		} else {
 			visitedLocation = user.getLastVisitedLocation();
 		}
 		user.addToVisitedLocations(visitedLocation);
-		rewardsService.calculateRewards(user);
 		return visitedLocation;
 	}
 
 	public List<NearbyAttractionDTO> getNearByAttractions(VisitedLocation visitedLocation) {
+		return getNearByAttractionsAsync(visitedLocation).join();
+	}
+
+	/**
+	 * Completes once the reward points of the closest attractions are known, without blocking the caller
+	 */
+	public CompletableFuture<List<NearbyAttractionDTO>> getNearByAttractionsAsync(VisitedLocation visitedLocation) {
 		// prepare a list to return
 		List<NearbyAttractionDTO> nearbyAttractions = new ArrayList<>();
 		UUID userId = visitedLocation.userId;
@@ -143,57 +434,61 @@ public class TourGuideService {
 		// needs : a user's id, and a visited location
 		if (userId == null || userLocation == null) {
 			System.err.println("Visited location is incomplete");
-			return nearbyAttractions;
+			return CompletableFuture.completedFuture(nearbyAttractions);
 		}
 
-		// get the attractions
-		List<Attraction> attractionList;
+		// get the closest attractions from the index
+		List<AttractionIndex.Neighbor> closestAttractions;
 		try {
-			attractionList = gpsUtil.getAttractions();
-			if (attractionList == null || attractionList.isEmpty()) {
+			closestAttractions = rewardsService.getAttractionIndex()
+					.findNearest(userLocation, NEARBY_ATTRACTIONS_LIMIT);
+			if (closestAttractions.isEmpty()) {
 				System.err.println("No attractions found");
-				return nearbyAttractions;
+				return CompletableFuture.completedFuture(nearbyAttractions);
 			}
 		} catch (Exception e) {
 			System.err.println("Error while getting nearby attractions : " + e.getMessage());
-			return nearbyAttractions;
+			return CompletableFuture.completedFuture(nearbyAttractions);
 		}
 
-		// find the attractions
-		for (Attraction attraction : attractionList) {
-			try {
-				double distance = rewardsService.getDistance(attraction, userLocation);
-				int rewardPoints = rewardsService.getRewardPoints(attraction, userId);
-
-				NearbyAttractionDTO dto = new NearbyAttractionDTO(
-						attraction.attractionName,
-						attraction.latitude,
-						attraction.longitude,
-						userLocation.latitude,
-						userLocation.longitude,
-						distance,
-						rewardPoints
-				);
-				nearbyAttractions.add(dto);
-
-			} catch (Exception e) {
-				System.err.println("Error retrieving attraction : " + e.getMessage());
-				return nearbyAttractions;
+		// already sorted by distance, closest first, reward points are looked up concurrently
+		List<CompletableFuture<Integer>> rewardPoints = closestAttractions.stream()
+				.map(neighbor -> rewardsService.getRewardPointsAsync(neighbor.attraction(), userId))
+				.toList();
+		return CompletableFuture.allOf(rewardPoints.toArray(new CompletableFuture[0])).handle((ignored, error) -> {
+			// every lookup is done, join does not block anymore
+			for (int i = 0; i < closestAttractions.size(); i++) {
+				try {
+					Attraction attraction = closestAttractions.get(i).attraction();
+
+					NearbyAttractionDTO dto = new NearbyAttractionDTO(
+							attraction.attractionName,
+							attraction.latitude,
+							attraction.longitude,
+							userLocation.latitude,
+							userLocation.longitude,
+							closestAttractions.get(i).distance(),
+							rewardPoints.get(i).join()
+					);
+					nearbyAttractions.add(dto);
+
+				} catch (Exception e) {
+					System.err.println("Error retrieving attraction : " + e.getMessage());
+					return nearbyAttractions;
+				}
 			}
-		}
+			return nearbyAttractions;
+		});
+	}
 
-		// sort by distance then return closest 5
-		return nearbyAttractions.stream()
-				.sorted(Comparator.comparingDouble(dto ->
-						dto.attractionDistance))
-				.limit(5)
-				.toList();
+	private record TripPricingKey(UUID attractionId, int adults, int children, int duration, int rewardPointsBucket) {
 	}
 
 	private void addShutDownHook() {
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			public void run() {
 				tracker.stopTracking();
+				rewardPipeline.shutdown();
 			}
 		});
 	}
@@ -205,43 +500,65 @@ public class TourGuideService {
 	 **********************************************************************************/
 	private static final String tripPricerApiKey = "test-server-api-key";
 	// Database connection will be used for external users, but for testing purposes
-	// internal users are provided and stored in memory
-	private final Map<String, User> internalUserMap = new HashMap<>();
+	// internal users are provided and stored in memory, or in the local store when one is configured
+	private final UserRepository userRepository;
 
+	/**
+	 * Users are generated in parallel, each one drawing from its own generator :
+	 * seeded from the user index when a seed is set, from the thread local generator otherwise
+	 */
 	private void initializeInternalUsers() {
-		IntStream.range(0, InternalTestHelper.getInternalUserNumber()).forEach(i -> {
+		Long seed = InternalTestHelper.getInternalUserSeed();
+		boolean lazyHistory = InternalTestHelper.isLazyInternalUserHistory();
+		IntStream.range(0, InternalTestHelper.getInternalUserNumber()).parallel().forEach(i -> {
+			RandomGenerator random = new SplittableRandom(seed == null ? ThreadLocalRandom.current().nextLong() : seed + i);
 			String userName = "internalUser" + i;
 			String phone = "000";
 			String email = userName + "@tourGuide.com";
-			User user = new User(UUID.randomUUID(), userName, phone, email);
-			generateUserLocationHistory(user);
+			UUID userId = generateRandomUserId(random);
+			User user = new User(userId, userName, phone, email);
+			if (lazyHistory) {
+				// the generator is kept, so lazy and eager histories are drawn alike
+				user.initializeHistoryLazily(history -> generateUserLocationHistory(history, userId, random));
+			} else {
+				generateUserLocationHistory(user.getLocationHistory(), userId, random);
+			}
 
-			internalUserMap.put(userName, user);
+			if (userRepository.add(user)) {
+				followRewards(user);
+			}
 		});
 		logger.debug("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
 	}
 
-	private void generateUserLocationHistory(User user) {
+	private void generateUserLocationHistory(LocationHistory history, UUID userId, RandomGenerator random) {
 		IntStream.range(0, 3).forEach(i -> {
-			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
-					new Location(generateRandomLatitude(), generateRandomLongitude()), getRandomTime()));
+			history.add(new VisitedLocation(userId,
+					new Location(generateRandomLatitude(random), generateRandomLongitude(random)), getRandomTime(random)));
 		});
 	}
 
-	private double generateRandomLongitude() {
+	// version 4 layout, like UUID.randomUUID, without going through SecureRandom
+	private UUID generateRandomUserId(RandomGenerator random) {
+		long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+		long leastSigBits = (random.nextLong() & ~(3L << 62)) | (1L << 63);
+		return new UUID(mostSigBits, leastSigBits);
+	}
+
+	private double generateRandomLongitude(RandomGenerator random) {
 		double leftLimit = -180;
 		double rightLimit = 180;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+		return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
 	}
 
-	private double generateRandomLatitude() {
+	private double generateRandomLatitude(RandomGenerator random) {
 		double leftLimit = -85.05112878;
 		double rightLimit = 85.05112878;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+		return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
 	}
 
-	private Date getRandomTime() {
-		LocalDateTime localDateTime = LocalDateTime.now().minusDays(new Random().nextInt(30));
+	private Date getRandomTime(RandomGenerator random) {
+		LocalDateTime localDateTime = LocalDateTime.now().minusDays(random.nextInt(30));
 		return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
 	}
 
@@ -0,0 +1,90 @@
+package com.openclassrooms.tourguide.tracking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.User;
+
+/**
+ * Write path of the positions reported by clients.
+ * Positions are queued per user without locking. The first thread to find a user's queue idle drains it :
+ * the positions queued by every thread meanwhile are sorted by time, appended to the history at once,
+ * and the user is handed to the reward pipeline a single time.
+ */
+public class LocationIngest implements MeterBinder {
+	private final RewardPipeline rewardPipeline;
+	private final ConcurrentMap<UUID, UserBuffer> buffers = new ConcurrentHashMap<>();
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+	private final Counter ingestedLocations = Counter.builder("tourguide.ingest.locations")
+			.description("Reported positions appended to a user history")
+			.register(meterRegistry);
+	private final Counter appendedBatches = Counter.builder("tourguide.ingest.batches")
+			.description("Groups of reported positions appended at once")
+			.register(meterRegistry);
+
+	public LocationIngest(RewardPipeline rewardPipeline) {
+		this.rewardPipeline = rewardPipeline;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		meterRegistry.add(registry);
+	}
+
+	/**
+	 * Queues the position, it is appended by the next {@link #drain(User)} of the user
+	 */
+	public void submit(User user, VisitedLocation visitedLocation) {
+		buffer(user).pending.add(visitedLocation);
+	}
+
+	/**
+	 * Appends the queued positions of the user, unless another thread is already doing so :
+	 * that thread then appends them as well before it returns
+	 */
+	public void drain(User user) {
+		UserBuffer buffer = buffer(user);
+		// the queue is checked again once released, a position queued during the drain is never left behind
+		while (!buffer.pending.isEmpty() && buffer.draining.compareAndSet(false, true)) {
+			List<VisitedLocation> batch = new ArrayList<>();
+			try {
+				for (VisitedLocation visitedLocation; (visitedLocation = buffer.pending.poll()) != null; ) {
+					batch.add(visitedLocation);
+				}
+				if (!batch.isEmpty()) {
+					batch.sort(Comparator.comparing(visitedLocation -> visitedLocation.timeVisited));
+					user.addToVisitedLocations(batch);
+					ingestedLocations.increment(batch.size());
+					appendedBatches.increment();
+				}
+			} finally {
+				buffer.draining.set(false);
+			}
+			if (!batch.isEmpty()) {
+				rewardPipeline.publish(user);
+			}
+		}
+	}
+
+	private UserBuffer buffer(User user) {
+		return buffers.computeIfAbsent(user.getUserId(), userId -> new UserBuffer());
+	}
+
+	private static class UserBuffer {
+		private final Queue<VisitedLocation> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean draining = new AtomicBoolean();
+	}
+}
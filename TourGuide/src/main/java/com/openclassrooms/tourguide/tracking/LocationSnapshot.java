@@ -0,0 +1,156 @@
+package com.openclassrooms.tourguide.tracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.User;
+
+/**
+ * Immutable last known location of every user, published by the Tracker once per interval.
+ * Locations are kept in parallel primitive arrays, and each encoding is built once then shared by every request.
+ */
+public class LocationSnapshot {
+	// user id, latitude, longitude, visit time
+	public static final int BINARY_RECORD_BYTES = 16 + 8 + 8 + 8;
+
+	private final long createdAt;
+	private final long[] mostSignificantBits;
+	private final long[] leastSignificantBits;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final long[] times;
+	private final Map<String, byte[]> encodings = new ConcurrentHashMap<>();
+
+	private LocationSnapshot(long createdAt, int capacity) {
+		this.createdAt = createdAt;
+		mostSignificantBits = new long[capacity];
+		leastSignificantBits = new long[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		times = new long[capacity];
+	}
+
+	/**
+	 * Users without any location, or whose history is not created yet, are left out
+	 */
+	public static LocationSnapshot of(Stream<User> users, int expectedSize) {
+		LocationSnapshot snapshot = new LocationSnapshot(System.currentTimeMillis(), expectedSize);
+		int[] count = { 0 };
+		users.forEach(user -> {
+			// a lazily generated history is not created just for the snapshot
+			VisitedLocation location = user.isHistoryPending() ? null : user.getLastVisitedLocation();
+			int i = count[0];
+			if (location == null || i == expectedSize) {
+				// users added since the size was read wait for the next snapshot
+				return;
+			}
+			snapshot.mostSignificantBits[i] = user.getUserId().getMostSignificantBits();
+			snapshot.leastSignificantBits[i] = user.getUserId().getLeastSignificantBits();
+			snapshot.latitudes[i] = location.location.latitude;
+			snapshot.longitudes[i] = location.location.longitude;
+			snapshot.times[i] = location.timeVisited.getTime();
+			count[0]++;
+		});
+		return count[0] == expectedSize ? snapshot : snapshot.truncate(count[0]);
+	}
+
+	private LocationSnapshot truncate(int size) {
+		LocationSnapshot truncated = new LocationSnapshot(createdAt, size);
+		System.arraycopy(mostSignificantBits, 0, truncated.mostSignificantBits, 0, size);
+		System.arraycopy(leastSignificantBits, 0, truncated.leastSignificantBits, 0, size);
+		System.arraycopy(latitudes, 0, truncated.latitudes, 0, size);
+		System.arraycopy(longitudes, 0, truncated.longitudes, 0, size);
+		System.arraycopy(times, 0, truncated.times, 0, size);
+		return truncated;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	public int size() {
+		return times.length;
+	}
+
+	public UUID getUserId(int index) {
+		return new UUID(mostSignificantBits[index], leastSignificantBits[index]);
+	}
+
+	public double getLatitude(int index) {
+		return latitudes[index];
+	}
+
+	public double getLongitude(int index) {
+		return longitudes[index];
+	}
+
+	public long getTime(int index) {
+		return times[index];
+	}
+
+	/**
+	 * {"createdAt":..,"locations":[{"userId":..,"latitude":..,"longitude":..,"time":..},..]}
+	 */
+	public byte[] toJson() {
+		return encodings.computeIfAbsent("json", key -> {
+			StringBuilder json = new StringBuilder(64 + size() * 120);
+			json.append("{\"createdAt\":").append(createdAt).append(",\"locations\":[");
+			for (int i = 0; i < size(); i++) {
+				if (i > 0) {
+					json.append(',');
+				}
+				json.append("{\"userId\":\"").append(getUserId(i))
+						.append("\",\"latitude\":").append(latitudes[i])
+						.append(",\"longitude\":").append(longitudes[i])
+						.append(",\"time\":").append(times[i]).append('}');
+			}
+			return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+		});
+	}
+
+	/**
+	 * Big endian : creation time and record count, then fixed size records of
+	 * user id (most then least significant bits), latitude, longitude and visit time
+	 */
+	public byte[] toBinary() {
+		return encodings.computeIfAbsent("binary", key -> {
+			ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + size() * BINARY_RECORD_BYTES);
+			buffer.putLong(createdAt).putInt(size());
+			for (int i = 0; i < size(); i++) {
+				buffer.putLong(mostSignificantBits[i]).putLong(leastSignificantBits[i])
+						.putDouble(latitudes[i]).putDouble(longitudes[i]).putLong(times[i]);
+			}
+			return buffer.array();
+		});
+	}
+
+	public byte[] toGzippedJson() {
+		// encoded outside computeIfAbsent, the map does not support recursive updates
+		byte[] json = toJson();
+		return encodings.computeIfAbsent("json.gz", key -> gzip(json));
+	}
+
+	public byte[] toGzippedBinary() {
+		byte[] binary = toBinary();
+		return encodings.computeIfAbsent("binary.gz", key -> gzip(binary));
+	}
+
+	private static byte[] gzip(byte[] content) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(content);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return compressed.toByteArray();
+	}
+}
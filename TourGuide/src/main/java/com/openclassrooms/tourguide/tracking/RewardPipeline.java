@@ -0,0 +1,141 @@
+package com.openclassrooms.tourguide.tracking;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+/**
+ * Runs the reward passes of tracked users on workers of their own, so that tracking never waits for RewardCentral.
+ * A user is queued at most once : locations tracked while the user is still queued are rewarded by the same pass.
+ * Publishing blocks once the queue is full, which slows tracking down only when rewards are a full queue behind.
+ */
+public class RewardPipeline implements MeterBinder {
+	private Logger logger = LoggerFactory.getLogger(RewardPipeline.class);
+	public static final int DEFAULT_WORKERS = 32;
+	public static final int DEFAULT_CAPACITY = 10_000;
+	// users taken off the queue at once by a worker
+	private static final int BATCH_SIZE = 64;
+	private static final long IDLE_POLL_MILLIS = 10;
+
+	private final RewardsService rewardsService;
+	private final BlockingQueue<User> queue;
+	private final Set<UUID> queuedUsers = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger usersInProgress = new AtomicInteger();
+	private final ExecutorService workers;
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+	private final Counter coalescedEvents = Counter.builder("tourguide.rewards.pipeline.coalesced")
+			.description("Location events merged into the pending reward pass of their user")
+			.register(meterRegistry);
+	private final Counter failedPasses = Counter.builder("tourguide.rewards.pipeline.failed")
+			.description("Reward passes that failed")
+			.register(meterRegistry);
+
+	public RewardPipeline(RewardsService rewardsService, TourGuideExecutor executor) {
+		this(rewardsService, executor, DEFAULT_WORKERS, DEFAULT_CAPACITY);
+	}
+
+	public RewardPipeline(RewardsService rewardsService, TourGuideExecutor executor, int workerCount, int capacity) {
+		this.rewardsService = rewardsService;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.workers = executor.newWorkerPool("reward-worker-");
+		Gauge.builder("tourguide.rewards.pipeline.queued", queue, BlockingQueue::size)
+				.description("Users waiting for a reward pass")
+				.register(meterRegistry);
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(this::consume);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		meterRegistry.add(registry);
+	}
+
+	/**
+	 * Queues a reward pass for the user, unless one is already queued
+	 */
+	public void publish(User user) {
+		if (!queuedUsers.add(user.getUserId())) {
+			coalescedEvents.increment();
+			return;
+		}
+		try {
+			queue.put(user);
+		} catch (InterruptedException e) {
+			queuedUsers.remove(user.getUserId());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void consume() {
+		List<User> batch = new ArrayList<>(BATCH_SIZE);
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				usersInProgress.addAndGet(batch.size());
+				for (User user : batch) {
+					// released first : a location tracked during the pass queues the user again
+					queuedUsers.remove(user.getUserId());
+					try {
+						rewardsService.calculateRewards(user);
+					} catch (RuntimeException e) {
+						failedPasses.increment();
+						logger.warn("Reward pass failed for " + user.getUserName() + " : " + e.getMessage());
+					} finally {
+						usersInProgress.decrementAndGet();
+					}
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			logger.debug("Reward worker stopping");
+		}
+	}
+
+	/**
+	 * @return the number of users queued or being rewarded
+	 */
+	public int getBacklog() {
+		return queue.size() + usersInProgress.get();
+	}
+
+	/**
+	 * Waits until every published user has been rewarded
+	 *
+	 * @return false when the timeout elapsed first
+	 */
+	public boolean awaitIdle(Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (!queuedUsers.isEmpty() || usersInProgress.get() > 0) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(IDLE_POLL_MILLIS);
+		}
+		return true;
+	}
+
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+}
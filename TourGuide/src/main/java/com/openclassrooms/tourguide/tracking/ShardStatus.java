@@ -0,0 +1,13 @@
+package com.openclassrooms.tourguide.tracking;
+
+/**
+ * Tracking state of one Tracker shard
+ *
+ * @param lastPassMillis duration of the last complete pass, or of the wait of the last pass timed out
+ * @param lagMillis      how far the oldest running pass is behind the polling interval, 0 when on time
+ * @param skippedUsers   users skipped because their previous tick was still running
+ * @param timedOutPasses passes that stopped waiting for their ticks after the pass timeout
+ */
+public record ShardStatus(int shard, int users, long lastPassMillis, long lagMillis, long skippedUsers,
+						  long timedOutPasses) {
+}
@@ -1,28 +1,97 @@
 package com.openclassrooms.tourguide.tracking;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.time.StopWatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.openclassrooms.tourguide.repository.UserRepository;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.domain.model.User;
 
-public class Tracker extends Thread {
+/**
+ * Tracks every user once per polling interval.
+ * Users are split into shards whose passes are spread evenly across the interval,
+ * each shard running its users on its own worker pool.
+ * The members of a shard are assigned once : the stored users when the tracker starts,
+ * then the users added through {@link #follow(User)}.
+ * Passes of a shard may overlap : a user whose previous tick is still running is skipped until the next pass,
+ * and a pass stops waiting for its ticks after {@link #PASS_TIMEOUT_INTERVALS} intervals, so one stuck user
+ * never holds the rest of its shard back.
+ * Rewards are left to the {@link RewardPipeline}, a pass only waits for the locations.
+ * Pass durations, lag and tracked users are published per shard once bound to a meter registry.
+ * A new snapshot of the last known locations is published once per interval.
+ */
+public class Tracker implements MeterBinder {
 	private Logger logger = LoggerFactory.getLogger(Tracker.class);
 	private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+	public static final int DEFAULT_SHARD_COUNT = 16;
+	public static final int PASS_TIMEOUT_INTERVALS = 2;
+
 	private final TourGuideService tourGuideService;
-	private boolean stop = false;
+	private final long intervalMillis;
+	private final List<Shard> shards = new ArrayList<>();
+	private final Set<UUID> usersInFlight = ConcurrentHashMap.newKeySet();
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+	private final Counter trackedUsers = Counter.builder("tourguide.tracker.users.tracked")
+			.description("Users whose location was tracked")
+			.register(meterRegistry);
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "tracker-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile boolean stop = false;
+	private volatile LocationSnapshot locationSnapshot;
 
 	public Tracker(TourGuideService tourGuideService) {
+		this(tourGuideService, DEFAULT_SHARD_COUNT, Duration.ofSeconds(trackingPollingInterval));
+	}
+
+	public Tracker(TourGuideService tourGuideService, int shardCount, Duration interval) {
 		this.tourGuideService = tourGuideService;
+		this.intervalMillis = interval.toMillis();
+		publishLocationSnapshot();
+
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new Shard(i, tourGuideService.getExecutor().newWorkerPool("tracker-shard-" + i + "-")));
+		}
+		tourGuideService.getUserRepository().stream().forEach(this::follow);
+		for (Shard shard : shards) {
+			scheduler.scheduleAtFixedRate(shard::runPass, shard.id * intervalMillis / shardCount, intervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+		scheduler.scheduleAtFixedRate(this::publishLocationSnapshot, intervalMillis, intervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
 
-		executorService.submit(this);
+	/**
+	 * Assigns the user to its shard, tracked from the next pass of that shard
+	 */
+	public void follow(User user) {
+		shards.get(Math.floorMod(user.getUserId().hashCode(), shards.size())).members.add(user);
 	}
 
 	/**
@@ -30,32 +99,128 @@ public class Tracker extends Thread {
 	 */
 	public void stopTracking() {
 		stop = true;
-		executorService.shutdownNow();
+		scheduler.shutdownNow();
+		shards.forEach(shard -> shard.workers.shutdownNow());
 	}
 
 	@Override
-	public void run() {
-		StopWatch stopWatch = new StopWatch();
-		while (true) {
-			if (Thread.currentThread().isInterrupted() || stop) {
+	public void bindTo(MeterRegistry registry) {
+		meterRegistry.add(registry);
+	}
+
+	/**
+	 * @return the last known location of every user, as of the end of the latest interval
+	 */
+	public LocationSnapshot getLocationSnapshot() {
+		return locationSnapshot;
+	}
+
+	// only run by the scheduler thread, once the constructor published the first one
+	private void publishLocationSnapshot() {
+		UserRepository userRepository = tourGuideService.getUserRepository();
+		locationSnapshot = LocationSnapshot.of(userRepository.stream(), userRepository.size());
+	}
+
+	public List<ShardStatus> getShardStatuses() {
+		return shards.stream().map(Shard::status).toList();
+	}
+
+	private class Shard {
+		private final int id;
+		private final ExecutorService workers;
+		// a set, so that a user added while the tracker starts is only assigned once
+		private final Set<User> members = ConcurrentHashMap.newKeySet();
+		private final AtomicLong skippedUsers = new AtomicLong();
+		private final AtomicLong timedOutPasses = new AtomicLong();
+		// start times of the passes still waiting for their ticks
+		private final Queue<Long> runningPasses = new ConcurrentLinkedQueue<>();
+		private final Timer passTimer;
+		private volatile int users;
+		private volatile long lastPassMillis;
+
+		Shard(int id, ExecutorService workers) {
+			this.id = id;
+			this.workers = workers;
+			String shard = String.valueOf(id);
+			passTimer = Timer.builder("tourguide.tracker.pass")
+					.description("Duration of a shard pass")
+					.tag("shard", shard)
+					.publishPercentiles(0.5, 0.95, 0.99)
+					.publishPercentileHistogram()
+					.register(meterRegistry);
+			Gauge.builder("tourguide.tracker.lag", this, s -> s.status().lagMillis())
+					.description("How far the shard is behind its polling interval")
+					.tag("shard", shard)
+					.baseUnit("milliseconds")
+					.register(meterRegistry);
+			FunctionCounter.builder("tourguide.tracker.users.skipped", skippedUsers, AtomicLong::get)
+					.description("Users skipped because their previous tick was still running")
+					.tag("shard", shard)
+					.register(meterRegistry);
+			FunctionCounter.builder("tourguide.tracker.passes.timedout", timedOutPasses, AtomicLong::get)
+					.description("Passes that stopped waiting for ticks still running after the pass timeout")
+					.tag("shard", shard)
+					.register(meterRegistry);
+		}
+
+		void runPass() {
+			if (stop) {
 				logger.debug("Tracker stopping");
-				break;
+				return;
 			}
+			List<User> shardUsers = List.copyOf(members);
+			Long startedAt = System.currentTimeMillis();
+			users = shardUsers.size();
 
-			List<User> users = tourGuideService.getAllUsers();
-			logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
-			stopWatch.start();
-			users.forEach(u -> tourGuideService.trackUserLocation(u));
-			stopWatch.stop();
-			logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
-			stopWatch.reset();
-			try {
-				logger.debug("Tracker sleeping");
-				TimeUnit.SECONDS.sleep(trackingPollingInterval);
-			} catch (InterruptedException e) {
-				break;
+			List<CompletableFuture<Void>> ticks = new ArrayList<>(shardUsers.size());
+			int skipped = 0;
+			for (User user : shardUsers) {
+				if (!usersInFlight.add(user.getUserId())) {
+					skipped++;
+					continue;
+				}
+				try {
+					ticks.add(CompletableFuture.runAsync(() -> tourGuideService.recordUserLocation(user), workers)
+							.whenComplete((ignored, error) -> {
+								usersInFlight.remove(user.getUserId());
+								if (error == null) {
+									trackedUsers.increment();
+								} else {
+									logger.warn("Tracking failed for " + user.getUserName() + " : " + error.getMessage());
+								}
+							}));
+				} catch (RejectedExecutionException e) {
+					// never submitted, the ticks already submitted release their users themselves
+					usersInFlight.remove(user.getUserId());
+					logger.debug("Tracker shard " + id + " stopped during a pass");
+					return;
+				}
 			}
+			skippedUsers.addAndGet(skipped);
+			int skippedThisPass = skipped;
+
+			runningPasses.add(startedAt);
+			CompletableFuture.allOf(ticks.toArray(new CompletableFuture[0]))
+					.orTimeout(PASS_TIMEOUT_INTERVALS * intervalMillis, TimeUnit.MILLISECONDS)
+					.whenComplete((ignored, error) -> {
+						// the ticks still running keep their users skipped by the next passes
+						if (error instanceof TimeoutException) {
+							timedOutPasses.incrementAndGet();
+						}
+						lastPassMillis = System.currentTimeMillis() - startedAt;
+						passTimer.record(lastPassMillis, TimeUnit.MILLISECONDS);
+						runningPasses.remove(startedAt);
+						logger.debug("Tracker shard " + id + " tracked " + ticks.size() + " users in "
+								+ lastPassMillis + " ms, skipped " + skippedThisPass);
+					});
 		}
 
+		ShardStatus status() {
+			// passes start in order, the head is the oldest one still running
+			Long oldestRunning = runningPasses.peek();
+			long elapsed = oldestRunning != null ? System.currentTimeMillis() - oldestRunning : lastPassMillis;
+			long lag = Math.max(0, elapsed - intervalMillis);
+			return new ShardStatus(id, users, lastPassMillis, lag, skippedUsers.get(), timedOutPasses.get());
+		}
 	}
 }
@@ -4,6 +4,8 @@ public class InternalTestHelper {
 
 	// Set this default up to 100,000 for testing
 	private static int internalUserNumber = 100;
+	private static Long internalUserSeed;
+	private static boolean lazyInternalUserHistory;
 	
 	public static void setInternalUserNumber(int internalUserNumber) {
 		InternalTestHelper.internalUserNumber = internalUserNumber;
@@ -12,4 +14,26 @@ public class InternalTestHelper {
 	public static int getInternalUserNumber() {
 		return internalUserNumber;
 	}
+
+	/**
+	 * Generates the same users, and the same locations, on every start. Null draws them at random.
+	 */
+	public static void setInternalUserSeed(Long internalUserSeed) {
+		InternalTestHelper.internalUserSeed = internalUserSeed;
+	}
+
+	public static Long getInternalUserSeed() {
+		return internalUserSeed;
+	}
+
+	/**
+	 * Creates the location history of each user on its first access instead of at startup
+	 */
+	public static void setLazyInternalUserHistory(boolean lazyInternalUserHistory) {
+		InternalTestHelper.lazyInternalUserHistory = lazyInternalUserHistory;
+	}
+
+	public static boolean isLazyInternalUserHistory() {
+		return lazyInternalUserHistory;
+	}
 }
@@ -0,0 +1,35 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Polls a condition until a deadline, instead of sleeping for a fixed time
+ */
+final class Await {
+	static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+	private Await() {
+	}
+
+	static void until(BooleanSupplier condition) {
+		until(condition, DEFAULT_TIMEOUT);
+	}
+
+	static void until(BooleanSupplier condition, Duration timeout) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() - deadline > 0) {
+				fail("Condition not met within " + timeout);
+			}
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted while waiting");
+			}
+		}
+	}
+}
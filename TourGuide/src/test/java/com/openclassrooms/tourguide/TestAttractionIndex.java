@@ -0,0 +1,131 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.GreatCircle;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+public class TestAttractionIndex {
+	private static RewardsService rewardsService;
+	private static AttractionIndex attractionIndex;
+	private static List<Attraction> attractions;
+
+	@BeforeAll
+	public static void init() {
+		rewardsService = new RewardsService(new GpsUtil(), new RewardCentral());
+		attractionIndex = rewardsService.getAttractionIndex();
+		attractions = attractionIndex.getAttractions();
+	}
+
+	@DisplayName("Range query matches a full scan")
+	@Test
+	public void findWithinMatchesFullScan() {
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Location location = randomLocation(random);
+			double miles = random.nextDouble() * 3000;
+
+			Set<String> expected = attractions.stream()
+					.filter(a -> rewardsService.getDistance(a, location) <= miles)
+					.map(a -> a.attractionName)
+					.collect(Collectors.toSet());
+			Set<String> actual = attractionIndex.findWithin(location, miles).stream()
+					.map(a -> a.attractionName)
+					.collect(Collectors.toSet());
+
+			assertEquals(expected, actual);
+		}
+	}
+
+	@DisplayName("Nearest query matches a full sort")
+	@Test
+	public void findNearestMatchesFullSort() {
+		Random random = new Random(7);
+		for (int i = 0; i < 500; i++) {
+			Location location = randomLocation(random);
+
+			List<String> expected = attractions.stream()
+					.sorted(Comparator.comparingDouble(a -> rewardsService.getDistance(a, location)))
+					.limit(5)
+					.map(a -> a.attractionName)
+					.toList();
+			List<AttractionIndex.Neighbor> neighbors = attractionIndex.findNearest(location, 5);
+
+			assertEquals(expected, neighbors.stream().map(n -> n.attraction().attractionName).toList());
+			neighbors.forEach(n -> assertEquals(
+					rewardsService.getDistance(n.attraction(), location), n.distance(), 1e-6));
+		}
+	}
+
+	@DisplayName("Vectorized bulk query matches the tree")
+	@Test
+	public void vectorizedFindWithinMatchesTree() {
+		Random random = new Random(11);
+		double[] latitudes = new double[500];
+		double[] longitudes = new double[500];
+		for (int i = 0; i < latitudes.length; i++) {
+			Location location = randomLocation(random);
+			latitudes[i] = location.latitude;
+			longitudes[i] = location.longitude;
+		}
+
+		for (double miles : new double[] { 10, 500, 3000 }) {
+			List<List<Attraction>> expected = attractionIndex.findWithin(latitudes, longitudes, miles, false);
+			List<List<Attraction>> actual = attractionIndex.findWithin(latitudes, longitudes, miles, true);
+			for (int i = 0; i < latitudes.length; i++) {
+				assertEquals(Set.copyOf(expected.get(i)), Set.copyOf(actual.get(i)));
+			}
+		}
+	}
+
+	@DisplayName("Attractions from another attraction list are found by name, namesakes elsewhere are computed")
+	@Test
+	public void foreignAttractionFallback() {
+		Attraction indexed = attractions.get(0);
+		// gpsUtil gives new ids on every call
+		Attraction sameAttraction = new GpsUtil().getAttractions().get(0);
+		Attraction namesake = new Attraction(indexed.attractionName, indexed.city, indexed.state,
+				indexed.latitude + 1, indexed.longitude);
+		Location location = new Location(indexed.latitude + 0.5, indexed.longitude);
+		double chordSquared = GreatCircle.chordSquaredForMiles(50);
+
+		assertTrue(attractionIndex.isIndexed(indexed));
+		assertTrue(attractionIndex.isIndexed(sameAttraction));
+		assertFalse(attractionIndex.isIndexed(namesake));
+		for (Attraction attraction : List.of(indexed, sameAttraction, namesake)) {
+			assertEquals(GreatCircle.miles(attraction, location), attractionIndex.distance(attraction, location), 1e-6);
+			assertEquals(GreatCircle.miles(attraction, location) <= 50,
+					attractionIndex.isWithin(attraction, location, chordSquared));
+		}
+		assertTrue(attractionIndex.isWithin(sameAttraction, location, chordSquared));
+		assertFalse(attractionIndex.isWithin(namesake, new Location(indexed.latitude - 0.5, indexed.longitude), chordSquared));
+	}
+
+	@Test
+	public void findWithinEverywhere() {
+		Location location = new Location(0, 0);
+
+		assertEquals(attractions.size(), attractionIndex.findWithin(location, Integer.MAX_VALUE).size());
+	}
+
+	private static Location randomLocation(Random random) {
+		return new Location(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+	}
+}
@@ -0,0 +1,52 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.GeofenceGrid;
+
+public class TestGeofenceGrid {
+	private final AttractionIndex attractionIndex = AttractionIndex.of(new GpsUtil().getAttractions());
+
+	@DisplayName("The grid never rejects a location with an attraction in range")
+	@Test
+	public void noFalseRejection() {
+		Random random = new Random(42);
+		for (double miles : new double[] { 0, 10, 200, 3000 }) {
+			GeofenceGrid geofence = GeofenceGrid.of(attractionIndex, miles);
+			for (int i = 0; i < 20_000; i++) {
+				// half of the locations close to an attraction, the others anywhere, poles included
+				Location location;
+				if (i % 2 == 0) {
+					Attraction attraction = attractionIndex.getAttractions().get(random.nextInt(attractionIndex.size()));
+					location = new Location(Math.max(-90, Math.min(90, attraction.latitude + random.nextGaussian())),
+							attraction.longitude + random.nextGaussian());
+				} else {
+					location = new Location(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+				}
+				if (!geofence.mayContain(location.latitude, location.longitude)) {
+					assertTrue(attractionIndex.findWithin(location, miles).isEmpty());
+				}
+			}
+		}
+	}
+
+	@DisplayName("With the default radius, almost every cell is rejected")
+	@Test
+	public void mostCellsRejected() {
+		GeofenceGrid geofence = GeofenceGrid.of(attractionIndex, 10);
+
+		assertTrue(geofence.getFlaggedCellCount() > 0);
+		assertTrue(geofence.getFlaggedCellCount() < geofence.getCellCount() / 100);
+		assertEquals(geofence.getCellCount(), GeofenceGrid.of(attractionIndex, Integer.MAX_VALUE).getFlaggedCellCount());
+	}
+}
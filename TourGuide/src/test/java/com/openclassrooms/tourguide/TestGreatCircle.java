@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.geo.GreatCircle;
+
+public class TestGreatCircle {
+
+	@DisplayName("Haversine distances match the spherical law of cosines")
+	@Test
+	public void milesMatchLawOfCosines() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			Location from = randomLocation(random);
+			Location to = randomLocation(random);
+			double expected = lawOfCosinesMiles(from, to);
+			assertEquals(expected, GreatCircle.miles(from, to), expected * 1e-9 + 1e-6);
+		}
+	}
+
+	@DisplayName("Chord thresholds agree with the distance in miles")
+	@Test
+	public void chordMatchesMiles() {
+		Random random = new Random(7);
+		for (int i = 0; i < 100_000; i++) {
+			Location from = randomLocation(random);
+			Location to = randomLocation(random);
+			double chordSquared = GreatCircle.chordSquared(GreatCircle.toUnitVector(from), GreatCircle.toUnitVector(to));
+			double miles = GreatCircle.miles(from, to);
+			assertEquals(miles, GreatCircle.chordSquaredToMiles(chordSquared), 1e-6);
+			assertEquals(chordSquared, GreatCircle.chordSquaredForMiles(miles), 1e-12);
+		}
+	}
+
+	// previous RewardsService.getDistance
+	private static double lawOfCosinesMiles(Location loc1, Location loc2) {
+		double lat1 = Math.toRadians(loc1.latitude);
+		double lon1 = Math.toRadians(loc1.longitude);
+		double lat2 = Math.toRadians(loc2.latitude);
+		double lon2 = Math.toRadians(loc2.longitude);
+		double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
+				+ Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+		return GreatCircle.STATUTE_MILES_PER_NAUTICAL_MILE * 60 * Math.toDegrees(angle);
+	}
+
+	private static Location randomLocation(Random random) {
+		return new Location(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+	}
+}
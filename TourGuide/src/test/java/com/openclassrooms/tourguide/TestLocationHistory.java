@@ -0,0 +1,57 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.LocationHistory;
+
+public class TestLocationHistory {
+
+	@DisplayName("Only the most recent locations are kept once the capacity is reached")
+	@Test
+	public void oldestLocationsAreOverwritten() {
+		UUID userId = UUID.randomUUID();
+		LocationHistory history = new LocationHistory(userId, 10);
+
+		for (int i = 0; i < 25; i++) {
+			history.add(new VisitedLocation(userId, new Location(i, -i), new Date(i)));
+		}
+
+		List<VisitedLocation> locations = history.toList();
+		assertEquals(10, locations.size());
+		assertEquals(25, history.appendedCount());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(15 + i, locations.get(i).location.latitude);
+			assertEquals(-(15 + i), locations.get(i).location.longitude);
+			assertEquals(15 + i, locations.get(i).timeVisited.getTime());
+			assertEquals(userId, locations.get(i).userId);
+		}
+		assertEquals(24, history.getLast().location.latitude);
+	}
+
+	@DisplayName("Ranges are clamped to the retained locations")
+	@Test
+	public void betweenSkipsOverwrittenLocations() {
+		UUID userId = UUID.randomUUID();
+		LocationHistory history = new LocationHistory(userId, 4);
+		assertTrue(history.isEmpty());
+
+		for (int i = 0; i < 6; i++) {
+			history.add(new VisitedLocation(userId, new Location(i, i), new Date(i)));
+		}
+
+		List<VisitedLocation> locations = history.between(1, 5);
+		assertEquals(3, locations.size());
+		assertEquals(2, locations.get(0).location.latitude);
+		assertEquals(4, locations.get(2).location.latitude);
+	}
+}
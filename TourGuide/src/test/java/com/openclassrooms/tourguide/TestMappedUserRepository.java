@@ -0,0 +1,156 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.LocationHistory;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.domain.model.UserEventListener;
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.repository.MappedUserRepository;
+
+public class TestMappedUserRepository {
+	private final AttractionIndex attractionIndex = AttractionIndex.of(new GpsUtil().getAttractions());
+
+	@TempDir
+	Path directory;
+
+	private MappedUserRepository open() throws IOException {
+		return open(attractionIndex);
+	}
+
+	private MappedUserRepository open(AttractionIndex attractionIndex) throws IOException {
+		return new MappedUserRepository(directory, attractionIndex::findByName, Duration.ZERO);
+	}
+
+	@DisplayName("Users, locations and rewards are loaded back after a restart")
+	@Test
+	public void reloadAfterRestart() throws IOException {
+		Attraction attraction = attractionIndex.getAttractions().get(0);
+		UUID userId = UUID.randomUUID();
+		try (MappedUserRepository userRepository = open()) {
+			User user = new User(userId, "jon", "000", "jon@tourGuide.com");
+			user.addToVisitedLocations(new VisitedLocation(userId, new Location(1, 2), new Date(1000)));
+			assertTrue(userRepository.add(user));
+			assertFalse(userRepository.add(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com")));
+
+			// changes made after the user was added
+			VisitedLocation atAttraction = new VisitedLocation(userId, attraction, new Date(2000));
+			user.addToVisitedLocations(atAttraction);
+			user.addUserReward(new User.UserReward(atAttraction, attraction, 42));
+		}
+
+		// gpsUtil gives new attraction ids to every instance, as to every start of the application
+		AttractionIndex restartedIndex = AttractionIndex.of(new GpsUtil().getAttractions());
+		try (MappedUserRepository userRepository = open(restartedIndex)) {
+			assertEquals(1, userRepository.size());
+			User user = userRepository.findByName("jon").orElseThrow();
+			assertEquals(userId, user.getUserId());
+			assertEquals("jon@tourGuide.com", user.getEmailAddress());
+			assertEquals(2, user.getVisitedLocations().size());
+			assertEquals(2000, user.getLastVisitedLocation().timeVisited.getTime());
+			assertEquals(1, user.getUserRewards().size());
+			assertEquals(attraction.attractionName, user.getUserRewards().get(0).attraction.attractionName);
+			assertEquals(42, user.getUserRewards().get(0).getRewardPoints());
+		}
+	}
+
+	@DisplayName("A listener set before the user is added keeps being notified along with the log")
+	@Test
+	public void addKeepsListener() throws IOException {
+		List<VisitedLocation> notified = new ArrayList<>();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.setListener(new UserEventListener() {
+			@Override
+			public void locationAdded(User user, VisitedLocation visitedLocation) {
+				notified.add(visitedLocation);
+			}
+		});
+		try (MappedUserRepository userRepository = open()) {
+			userRepository.add(user);
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date()));
+		}
+		assertEquals(1, notified.size());
+
+		try (MappedUserRepository userRepository = open()) {
+			assertEquals(1, userRepository.findByName("jon").orElseThrow().getVisitedLocations().size());
+		}
+	}
+
+	@DisplayName("A compaction replaces the logs by a snapshot, later changes still survive a restart")
+	@Test
+	public void compaction() throws IOException {
+		try (MappedUserRepository userRepository = open()) {
+			for (int i = 0; i < 1000; i++) {
+				User user = new User(UUID.randomUUID(), "internalUser" + i, "000", "internalUser" + i + "@tourGuide.com");
+				user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i % 90, i % 180), new Date()));
+				userRepository.add(user);
+			}
+			userRepository.compact();
+			userRepository.findByName("internalUser0").orElseThrow()
+					.addToVisitedLocations(new VisitedLocation(UUID.randomUUID(), new Location(0, 0), new Date()));
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			// the snapshot and the log written since the compaction
+			assertEquals(2, files.count());
+		}
+
+		try (MappedUserRepository userRepository = open()) {
+			assertEquals(1000, userRepository.size());
+			assertEquals(2, userRepository.findByName("internalUser0").orElseThrow().getVisitedLocations().size());
+			assertEquals(1, userRepository.findByName("internalUser999").orElseThrow().getVisitedLocations().size());
+		}
+	}
+
+	@DisplayName("Changes logged concurrently, across a compaction, all survive a restart")
+	@Test
+	public void concurrentWriters() throws IOException {
+		int userCount = 8;
+		// every location is retained : a record lost shortens the history read back
+		int locationsPerUser = LocationHistory.DEFAULT_CAPACITY;
+		try (MappedUserRepository userRepository = open()) {
+			List<User> users = IntStream.range(0, userCount)
+					.mapToObj(i -> new User(UUID.randomUUID(), "internalUser" + i, "000", "internalUser" + i + "@tourGuide.com"))
+					.toList();
+			users.forEach(userRepository::add);
+
+			List<CompletableFuture<Void>> writers = users.stream()
+					.map(user -> CompletableFuture.runAsync(() -> {
+						for (int i = 0; i < locationsPerUser; i++) {
+							user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i % 90, i % 180), new Date(i)));
+						}
+					}))
+					.toList();
+			userRepository.compact();
+			writers.forEach(CompletableFuture::join);
+		}
+
+		try (MappedUserRepository userRepository = open()) {
+			for (int i = 0; i < userCount; i++) {
+				User user = userRepository.findByName("internalUser" + i).orElseThrow();
+				assertEquals(locationsPerUser, user.getVisitedLocations().size());
+			}
+		}
+	}
+}
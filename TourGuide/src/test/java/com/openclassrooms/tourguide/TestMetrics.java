@@ -0,0 +1,53 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.concurrent.Downstream;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.util.InternalTestHelper;
+
+public class TestMetrics {
+	private RewardsService rewardsService;
+	private TourGuideService tourGuideService;
+	private SimpleMeterRegistry registry;
+
+	@BeforeEach
+	public void init() {
+		GpsUtil gpsUtil = new GpsUtil();
+		rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		registry = new SimpleMeterRegistry();
+		rewardsService.getExecutor().bindTo(registry);
+		rewardsService.bindTo(registry);
+		tourGuideService.bindTo(registry);
+	}
+
+	@DisplayName("Downstream calls, reward passes and tracker passes are published to the bound registry")
+	@Test
+	public void downstreamCallsAndRewardPassesAreTimed() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.trackUserLocation(user);
+
+		assertEquals(1, registry.get("tourguide.downstream.calls")
+				.tag("downstream", Downstream.GPS_UTIL.getOperation()).timer().count());
+		assertEquals(1, registry.get("tourguide.rewards.calculation").timer().count());
+		assertNotNull(registry.find("tourguide.rewards.cache.hit.ratio").gauge());
+		assertTrue(registry.find("tourguide.tracker.pass").timers().size() > 0);
+	}
+}
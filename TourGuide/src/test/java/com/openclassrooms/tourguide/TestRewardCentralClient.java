@@ -0,0 +1,122 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.client.RewardCentralClient;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+
+public class TestRewardCentralClient {
+	private final AtomicInteger calls = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private TourGuideExecutor executor;
+	private RewardCentralClient client;
+
+	@BeforeEach
+	public void init() {
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				calls.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		executor = TourGuideExecutor.defaults();
+		// long enough for every lookup of a test to be queued within the window of the first one
+		client = new RewardCentralClient(rewardCentral, executor, Duration.ofSeconds(1));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		client.shutdown();
+		executor.shutdown();
+	}
+
+	@DisplayName("Concurrent lookups of the same pair share one call")
+	@Test
+	public void coalesceSameKey() {
+		UUID attractionId = UUID.randomUUID();
+		UUID userId = UUID.randomUUID();
+
+		CompletableFuture<Integer> first = client.getAttractionRewardPoints(attractionId, userId);
+		CompletableFuture<Integer> second = client.getAttractionRewardPoints(attractionId, userId);
+		release.countDown();
+
+		assertNotSame(first, second);
+		assertEquals(42, first.join());
+		assertEquals(42, second.join());
+		assertEquals(1, calls.get());
+		assertEquals(1, client.getCoalescedLookups());
+	}
+
+	@DisplayName("Cancelling one caller's future leaves the other callers of the shared call untouched")
+	@Test
+	public void cancelDoesNotAffectOtherCallers() {
+		UUID attractionId = UUID.randomUUID();
+		UUID userId = UUID.randomUUID();
+
+		CompletableFuture<Integer> first = client.getAttractionRewardPoints(attractionId, userId);
+		CompletableFuture<Integer> second = client.getAttractionRewardPoints(attractionId, userId);
+		first.cancel(true);
+		second.obtrudeValue(-1);
+		CompletableFuture<Integer> third = client.getAttractionRewardPoints(attractionId, userId);
+		release.countDown();
+
+		assertTrue(first.isCancelled());
+		assertEquals(-1, second.join());
+		assertEquals(42, third.join());
+		assertEquals(1, calls.get());
+		assertEquals(2, client.getCoalescedLookups());
+	}
+
+	@DisplayName("The lookup opening a window is dispatched at once, the ones queued in the window together")
+	@Test
+	public void batchWithinWindow() {
+		UUID userId = UUID.randomUUID();
+
+		List<CompletableFuture<Integer>> lookups = IntStream.range(0, 10)
+				.mapToObj(i -> client.getAttractionRewardPoints(UUID.randomUUID(), userId))
+				.toList();
+		assertEquals(1, client.getDispatchedLookups());
+		release.countDown();
+
+		lookups.forEach(lookup -> assertEquals(42, lookup.join()));
+		assertEquals(10, client.getDispatchedLookups());
+		assertEquals(2, client.getDispatchedBatches());
+	}
+
+	@DisplayName("A lookup on an idle client does not wait for the batch window")
+	@Test
+	public void idleLookupIsNotDelayed() throws Exception {
+		RewardCentralClient slowWindowClient = new RewardCentralClient(new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				return 7;
+			}
+		}, executor, Duration.ofSeconds(30));
+
+		assertEquals(7, slowWindowClient.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID())
+				.get(10, TimeUnit.SECONDS));
+	}
+}
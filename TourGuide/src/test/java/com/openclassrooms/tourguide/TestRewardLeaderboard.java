@@ -0,0 +1,73 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardLeaderboard;
+
+public class TestRewardLeaderboard {
+	private final List<Attraction> attractions = new GpsUtil().getAttractions();
+
+	private User follow(RewardLeaderboard leaderboard, int i) {
+		User user = new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com");
+		user.setListener(leaderboard);
+		return user;
+	}
+
+	private void reward(User user, int attraction, int points) {
+		Attraction rewarded = attractions.get(attraction);
+		user.addUserReward(new User.UserReward(new VisitedLocation(user.getUserId(), rewarded, new Date()), rewarded, points));
+	}
+
+	@DisplayName("Users without points are not ranked, and a second reward moves a user up")
+	@Test
+	public void rankingFollowsRewards() {
+		RewardLeaderboard leaderboard = new RewardLeaderboard(10);
+		User first = follow(leaderboard, 0);
+		User second = follow(leaderboard, 1);
+		follow(leaderboard, 2);
+
+		reward(first, 0, 100);
+		reward(second, 0, 60);
+		assertEquals(List.of("user0", "user1"), leaderboard.top(10).stream().map(RewardLeaderboard.Entry::userName).toList());
+
+		reward(second, 1, 60);
+		List<RewardLeaderboard.Entry> top = leaderboard.top(10);
+		assertEquals(2, top.size());
+		assertEquals("user1", top.get(0).userName());
+		assertEquals(120, top.get(0).points());
+	}
+
+	@DisplayName("With rewards granted concurrently, the retained top matches the totals of the users")
+	@Test
+	public void concurrentRewardsKeepExactTop() {
+		RewardLeaderboard leaderboard = new RewardLeaderboard(10);
+		List<User> users = IntStream.range(0, 1000).mapToObj(i -> follow(leaderboard, i)).toList();
+
+		IntStream.range(0, users.size() * 5).parallel()
+				.forEach(i -> reward(users.get(i % users.size()), i / users.size(), (i * 7919) % 1000 + 1));
+
+		List<Long> expected = users.stream()
+				.map(User::getRewardPoints)
+				.sorted(Comparator.reverseOrder())
+				.limit(10)
+				.toList();
+		List<RewardLeaderboard.Entry> top = leaderboard.top(100);
+		assertEquals(expected, top.stream().map(RewardLeaderboard.Entry::points).toList());
+		assertTrue(top.stream().allMatch(entry -> users.stream()
+				.anyMatch(user -> user.getUserId().equals(entry.userId()) && user.getRewardPoints() == entry.points())));
+	}
+}
@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracking.RewardPipeline;
+import com.openclassrooms.tourguide.util.InternalTestHelper;
+
+public class TestRewardPipeline {
+	private GpsUtil gpsUtil;
+	private RewardsService rewardsService;
+
+	@BeforeEach
+	public void init() {
+		gpsUtil = new GpsUtil();
+		rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+	}
+
+	@DisplayName("Recorded locations are rewarded by the pipeline")
+	@Test
+	public void recordedLocationIsRewarded() throws InterruptedException {
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		tourGuideService.recordUserLocation(user);
+
+		assertTrue(tourGuideService.getRewardPipeline().awaitIdle(Duration.ofSeconds(30)));
+		assertEquals(1, user.getUserRewards().size());
+	}
+
+	@DisplayName("Events published while a user is queued share one reward pass")
+	@Test
+	public void eventsOfQueuedUserAreCoalesced() {
+		// no worker : every event stays queued
+		RewardPipeline rewardPipeline = new RewardPipeline(rewardsService, rewardsService.getExecutor(), 0, 10);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		rewardPipeline.publish(user);
+		rewardPipeline.publish(user);
+		rewardPipeline.publish(new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com"));
+
+		assertEquals(2, rewardPipeline.getBacklog());
+		rewardPipeline.shutdown();
+	}
+}
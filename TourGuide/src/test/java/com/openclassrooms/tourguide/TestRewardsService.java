@@ -1,16 +1,20 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.*;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
 import com.openclassrooms.tourguide.util.InternalTestHelper;
@@ -66,4 +70,144 @@ public class TestRewardsService {
 		assertEquals(gpsUtil.getAttractions().size(), userRewards.size());
 	}
 
+	@DisplayName("Reward passes only evaluate the new locations")
+	@Test
+	public void incrementalRewards() {
+		List<Attraction> attractions = rewardsService.getAttractionIndex().getAttractions();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attractions.get(0), new Date()));
+		rewardsService.calculateRewards(user);
+		rewardsService.calculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attractions.get(1), new Date()));
+		rewardsService.calculateRewards(user);
+		assertEquals(2, user.getUserRewards().size());
+	}
+
+	@DisplayName("Concurrent rewards for the same attraction are only kept once")
+	@Test
+	public void concurrentDuplicateRewards() {
+		List<Attraction> attractions = rewardsService.getAttractionIndex().getAttractions();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), attractions.get(0), new Date());
+
+		IntStream.range(0, 10_000).parallel().forEach(i ->
+				user.addUserReward(new User.UserReward(visitedLocation, attractions.get(i % attractions.size()))));
+
+		assertEquals(attractions.size(), user.getUserRewards().size());
+	}
+
+	@DisplayName("An attraction from another attraction list is recognized by its name and rewarded once")
+	@Test
+	public void rewardsDeduplicatedByAttractionName() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		// every list draws new ids for the same attractions
+		Attraction sameAttraction = new GpsUtil().getAttractions().get(0);
+		user.addUserReward(new User.UserReward(new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 10));
+		user.addUserReward(new User.UserReward(
+				new VisitedLocation(user.getUserId(), sameAttraction, new Date()), sameAttraction, 10));
+
+		assertEquals(1, user.getUserRewards().size());
+		assertEquals(10, user.getRewardPoints());
+	}
+
+	@Test
+	public void rewardPointsAreCached() {
+		Attraction attraction = rewardsService.getAttractionIndex().getAttractions().get(0);
+		UUID userId = UUID.randomUUID();
+
+		int points = rewardsService.getRewardPoints(attraction, userId);
+
+		assertEquals(points, rewardsService.getRewardPoints(attraction, userId));
+		assertEquals(1, rewardsService.getRewardCacheStats().missCount());
+		assertEquals(1, rewardsService.getRewardCacheStats().hitCount());
+	}
+
+	@DisplayName("Users with their own radius are rewarded within it, and again when it widens")
+	@Test
+	public void userProximityRadius() {
+		Attraction attraction = rewardsService.getAttractionIndex().getAttractions().get(0);
+		// about 35 miles north of the attraction
+		Location location = new Location(attraction.latitude + 0.5, attraction.longitude);
+		User regular = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User premium = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		premium.getUserPreferences().setAttractionProximity(50);
+		for (User user : List.of(regular, premium)) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), location, new Date()));
+			rewardsService.calculateRewards(user);
+		}
+
+		int withinBuffer = rewardsService.getAttractionIndex().findWithin(location, rewardsService.getProximityBuffer()).size();
+		assertEquals(withinBuffer, regular.getUserRewards().size());
+		assertEquals(rewardsService.getAttractionIndex().findWithin(location, 50).size(), premium.getUserRewards().size());
+		assertTrue(premium.getUserRewards().size() > withinBuffer);
+
+		regular.getUserPreferences().setAttractionProximity(50);
+		rewardsService.calculateRewards(regular);
+		assertEquals(premium.getUserRewards().size(), regular.getUserRewards().size());
+	}
+
+	@DisplayName("More distinct radii than the grid cache holds share the grids of their buckets")
+	@Test
+	public void manyUserRadii() {
+		RewardsService fastRewardsService = new RewardsService(gpsUtil, new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				return 1;
+			}
+		});
+		Attraction attraction = fastRewardsService.getAttractionIndex().getAttractions().get(0);
+		Location location = new Location(attraction.latitude + 0.5, attraction.longitude);
+		List<User> users = IntStream.rangeClosed(1, 200)
+				.mapToObj(radius -> {
+					User user = new User(UUID.randomUUID(), "user" + radius, "000", "user" + radius + "@tourGuide.com");
+					user.getUserPreferences().setAttractionProximity(radius * 100);
+					user.addToVisitedLocations(new VisitedLocation(user.getUserId(), location, new Date()));
+					return user;
+				})
+				.toList();
+
+		fastRewardsService.calculateRewardsForMultipleUsers(users);
+		long geofenceCount = fastRewardsService.getUserGeofenceCount();
+		users.forEach(user -> user.getUserPreferences().setAttractionProximity(user.getUserPreferences().getAttractionProximity() + 1));
+		fastRewardsService.calculateRewardsForMultipleUsers(users);
+
+		assertTrue(geofenceCount < 64);
+		assertEquals(geofenceCount, fastRewardsService.getUserGeofenceCount());
+		for (User user : users) {
+			int radius = user.getUserPreferences().getAttractionProximity();
+			assertEquals(fastRewardsService.getAttractionIndex().findWithin(location, radius).size(),
+					user.getUserRewards().size());
+		}
+		fastRewardsService.shutdown();
+	}
+
+	@DisplayName("Locations of a pass whose reward lookup failed are evaluated again by the next pass")
+	@Test
+	public void failedLookupIsRetried() {
+		AtomicBoolean failing = new AtomicBoolean(true);
+		RewardsService flakyRewardsService = new RewardsService(gpsUtil, new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				if (failing.get()) {
+					throw new IllegalStateException("RewardCentral unavailable");
+				}
+				return 42;
+			}
+		});
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+
+		assertThrows(RuntimeException.class, () -> flakyRewardsService.calculateRewards(user));
+		assertEquals(0, user.getUserRewards().size());
+
+		failing.set(false);
+		flakyRewardsService.calculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+		assertEquals(42, user.getRewardPoints());
+	}
 }
@@ -0,0 +1,65 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+
+public class TestTourGuideExecutor {
+
+	@DisplayName("Fork join worker pools share the threads of the executor, and shut down independently")
+	@Test
+	public void forkJoinWorkerPoolsShareOnePool() throws InterruptedException {
+		TourGuideExecutor executor = new TourGuideExecutor(ExecutionMode.FORK_JOIN, 4, TourGuideExecutor.DEFAULT_PERMITS);
+		ExecutorService first = executor.newWorkerPool("first-");
+		ExecutorService second = executor.newWorkerPool("second-");
+		Set<String> threadNames = ConcurrentHashMap.newKeySet();
+		CountDownLatch ran = new CountDownLatch(200);
+		for (int i = 0; i < 100; i++) {
+			first.execute(() -> {
+				threadNames.add(Thread.currentThread().getName());
+				ran.countDown();
+			});
+			second.execute(() -> {
+				threadNames.add(Thread.currentThread().getName());
+				ran.countDown();
+			});
+		}
+		assertTrue(ran.await(10, TimeUnit.SECONDS));
+		assertTrue(threadNames.size() <= 4);
+
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		first.execute(() -> {
+			blocked.countDown();
+			try {
+				Thread.sleep(10_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		});
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		first.shutdownNow();
+		assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+		assertTrue(first.awaitTermination(10, TimeUnit.SECONDS));
+		assertThrows(RejectedExecutionException.class, () -> first.execute(() -> { }));
+
+		CountDownLatch stillRunning = new CountDownLatch(1);
+		second.execute(stillRunning::countDown);
+		assertTrue(stillRunning.await(10, TimeUnit.SECONDS));
+		assertFalse(second.isShutdown());
+		executor.shutdown();
+	}
+}
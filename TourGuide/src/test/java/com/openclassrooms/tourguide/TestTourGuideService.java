@@ -1,16 +1,27 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
+import com.openclassrooms.tourguide.domain.dto.IngestResultDTO;
+import com.openclassrooms.tourguide.domain.dto.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.domain.dto.LocationReportDTO;
 import com.openclassrooms.tourguide.domain.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.domain.dto.UserResultDTO;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
 import com.openclassrooms.tourguide.util.InternalTestHelper;
@@ -127,4 +138,163 @@ public class TestTourGuideService {
 		assertEquals(10, providers.size());
 	}
 
+	@DisplayName("Nearby attractions are computed asynchronously from the user location")
+	@Test
+	public void getNearbyAttractionsAsync() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		List<NearbyAttractionDTO> attractions = tourGuideService.getUserLocationAsync(user)
+				.thenCompose(tourGuideService::getNearByAttractionsAsync)
+				.join();
+
+		tourGuideService.tracker.stopTracking();
+
+		assertTrue(user.hasVisitedLocations());
+		assertEquals(5, attractions.size());
+	}
+
+	@DisplayName("Bulk evaluation keeps the users order and reports failures and cancellations per user")
+	@Test
+	public void evaluateUsers() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(600);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		List<User> users = tourGuideService.getAllUsers();
+		List<UserResultDTO<String>> results = new ArrayList<>();
+		CompletableFuture<String> cancelled = new CompletableFuture<>();
+		cancelled.cancel(true);
+		tourGuideService.evaluateUsers(users.iterator(), user -> user == users.get(1)
+				? CompletableFuture.failedFuture(new IllegalStateException("unavailable"))
+				: user == users.get(2) ? cancelled
+				: tourGuideService.getExecutor().supplyAsync(user::getEmailAddress), results::add);
+
+		assertEquals(users.size(), results.size());
+		for (int i = 0; i < users.size(); i++) {
+			assertEquals(users.get(i).getUserName(), results.get(i).getUserName());
+		}
+		assertEquals("unavailable", results.get(1).getError());
+		assertEquals("Evaluation cancelled", results.get(2).getError());
+		assertEquals(users.get(0).getEmailAddress(), results.get(0).getResult());
+	}
+
+
+	@DisplayName("Seeded internal users are generated alike, with eager or lazy histories")
+	@Test
+	public void seededInternalUsers() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(50);
+		InternalTestHelper.setInternalUserSeed(42L);
+		TourGuideService eager;
+		TourGuideService lazy;
+		try {
+			eager = new TourGuideService(gpsUtil, rewardsService);
+			eager.tracker.stopTracking();
+			InternalTestHelper.setLazyInternalUserHistory(true);
+			lazy = new TourGuideService(gpsUtil, rewardsService);
+			lazy.tracker.stopTracking();
+		} finally {
+			InternalTestHelper.setInternalUserSeed(null);
+			InternalTestHelper.setLazyInternalUserHistory(false);
+		}
+
+		User eagerUser = eager.getUser("internalUser7");
+		User lazyUser = lazy.getUser("internalUser7");
+		assertEquals(eagerUser.getUserId(), lazyUser.getUserId());
+		assertTrue(lazyUser.isHistoryPending());
+		assertEquals(3, lazyUser.getVisitedLocations().size());
+		assertFalse(lazyUser.isHistoryPending());
+		assertEquals(eagerUser.getLastVisitedLocation().location.latitude,
+				lazyUser.getLastVisitedLocation().location.latitude);
+	}
+
+	@DisplayName("Reported positions are appended in time order and rewarded once")
+	@Test
+	public void ingestLocations() throws InterruptedException {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		List<LocationReportDTO> reports = List.of(
+				new LocationReportDTO(user.getUserId(), attraction.latitude, attraction.longitude, 2000),
+				new LocationReportDTO(user.getUserId(), 10, 20, 1000),
+				new LocationReportDTO(UUID.randomUUID(), 10, 20, 1000),
+				new LocationReportDTO(user.getUserId(), 91, 20, 1000));
+
+		IngestResultDTO result = tourGuideService.ingestLocations(reports);
+
+		assertEquals(2, result.getAccepted());
+		assertEquals(2, result.getRejected());
+		assertEquals(2, user.getVisitedLocations().size());
+		assertEquals(2000, user.getLastVisitedLocation().timeVisited.getTime());
+		assertTrue(tourGuideService.getRewardPipeline().awaitIdle(Duration.ofSeconds(30)));
+		assertEquals(1, user.getUserRewards().size());
+	}
+
+	@DisplayName("Positions reported concurrently for the same user are all appended")
+	@Test
+	public void concurrentIngest() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+
+		IntStream.range(0, 100).parallel().forEach(i -> tourGuideService.ingestLocations(IntStream.range(0, 5)
+				.mapToObj(j -> new LocationReportDTO(user.getUserId(), 1, 2, i * 5L + j))
+				.toList()));
+
+		assertEquals(500, user.getVisitedLocations().size());
+	}
+
+	@DisplayName("The reward leaderboard ranks the users by their total points as rewards are granted")
+	@Test
+	public void rewardLeaderboard() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		List<Attraction> attractions = gpsUtil.getAttractions();
+
+		List<User> users = IntStream.range(0, 3)
+				.mapToObj(i -> new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"))
+				.toList();
+		users.forEach(tourGuideService::addUser);
+		// user i gets i + 1 rewards of 10 points
+		for (int i = 0; i < users.size(); i++) {
+			User user = users.get(i);
+			for (int j = 0; j <= i; j++) {
+				Attraction attraction = attractions.get(j);
+				user.addUserReward(new User.UserReward(
+						new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 10));
+			}
+		}
+
+		List<LeaderboardEntryDTO> leaderboard = tourGuideService.getRewardLeaderboard(2);
+
+		assertEquals(30, users.get(2).getRewardPoints());
+		assertEquals(2, leaderboard.size());
+		assertEquals(1, leaderboard.get(0).getRank());
+		assertEquals("user2", leaderboard.get(0).getUserName());
+		assertEquals(30, leaderboard.get(0).getRewardPoints());
+		assertEquals("user1", leaderboard.get(1).getUserName());
+		assertEquals(20, leaderboard.get(1).getRewardPoints());
+	}
 }
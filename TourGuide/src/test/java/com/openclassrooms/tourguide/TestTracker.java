@@ -0,0 +1,141 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.util.InternalTestHelper;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracking.LocationSnapshot;
+import com.openclassrooms.tourguide.tracking.ShardStatus;
+import com.openclassrooms.tourguide.tracking.Tracker;
+
+public class TestTracker {
+	private GpsUtil gpsUtil;
+	private RewardsService rewardsService;
+
+	@BeforeEach
+	public void init() {
+		gpsUtil = new GpsUtil();
+		rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+	}
+
+	// the service tracker is stopped, the tests start their own
+	private TourGuideService tourGuideService(int internalUserNumber) {
+		InternalTestHelper.setInternalUserNumber(internalUserNumber);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		return tourGuideService;
+	}
+
+	@DisplayName("Every user is tracked by exactly one shard")
+	@Test
+	public void shardsCoverAllUsers() {
+		TourGuideService tourGuideService = tourGuideService(20);
+
+		Tracker tracker = new Tracker(tourGuideService, 4, Duration.ofMillis(200));
+		try {
+			// each shard counts its users when its first pass starts
+			Await.until(() -> tracker.getShardStatuses().stream().mapToInt(ShardStatus::users).sum() == 20);
+
+			assertEquals(4, tracker.getShardStatuses().size());
+		} finally {
+			tracker.stopTracking();
+		}
+	}
+
+	@DisplayName("The location snapshot holds the last location of every user")
+	@Test
+	public void locationSnapshot() {
+		TourGuideService tourGuideService = tourGuideService(10);
+
+		LocationSnapshot snapshot = tourGuideService.getLocationSnapshot();
+
+		assertEquals(10, snapshot.size());
+		for (int i = 0; i < snapshot.size(); i++) {
+			User user = tourGuideService.getUser(snapshot.getUserId(i));
+			VisitedLocation last = user.getLastVisitedLocation();
+			assertEquals(last.location.latitude, snapshot.getLatitude(i));
+			assertEquals(last.location.longitude, snapshot.getLongitude(i));
+		}
+		assertEquals(8 + 4 + 10 * LocationSnapshot.BINARY_RECORD_BYTES, snapshot.toBinary().length);
+		assertTrue(snapshot.toGzippedJson().length < snapshot.toJson().length);
+	}
+
+	@DisplayName("Users followed after the start are tracked, the snapshot is published once per interval")
+	@Test
+	public void followedUsersAreTracked() {
+		TourGuideService tourGuideService = tourGuideService(0);
+
+		Tracker tracker = new Tracker(tourGuideService, 4, Duration.ofMillis(200));
+		for (int i = 0; i < 10; i++) {
+			User user = new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com");
+			tourGuideService.getUserRepository().add(user);
+			tracker.follow(user);
+		}
+		try {
+			assertEquals(0, tracker.getLocationSnapshot().size());
+			// the users only have a location once tracked, the next snapshot holds them all
+			Await.until(() -> tracker.getLocationSnapshot().size() == 10);
+
+			assertEquals(10, tracker.getShardStatuses().stream().mapToInt(ShardStatus::users).sum());
+		} finally {
+			tracker.stopTracking();
+		}
+	}
+
+	@DisplayName("A stuck user is skipped while the rest of its shard keeps being tracked")
+	@Test
+	public void stuckUserIsSkipped() {
+		InternalTestHelper.setInternalUserNumber(2);
+		CountDownLatch release = new CountDownLatch(1);
+		Map<String, AtomicInteger> ticks = new ConcurrentHashMap<>();
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService) {
+			@Override
+			public VisitedLocation recordUserLocation(User user) {
+				ticks.computeIfAbsent(user.getUserName(), name -> new AtomicInteger()).incrementAndGet();
+				if (user.getUserName().equals("internalUser0")) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return user.getLastVisitedLocation();
+			}
+		};
+		tourGuideService.tracker.stopTracking();
+
+		Tracker tracker = new Tracker(tourGuideService, 1, Duration.ofMillis(50));
+		try {
+			Await.until(() -> ticks.containsKey("internalUser1") && ticks.get("internalUser1").get() >= 5
+					&& tracker.getShardStatuses().get(0).timedOutPasses() >= 1);
+			ShardStatus status = tracker.getShardStatuses().get(0);
+
+			assertEquals(1, ticks.get("internalUser0").get());
+			assertTrue(status.skippedUsers() >= 4, "skipped users " + status.skippedUsers());
+			// the pass waiting for the stuck user gave up, the passes since then do not wait for it
+			assertTrue(status.lagMillis() <= 50 * (Tracker.PASS_TIMEOUT_INTERVALS - 1) + 50,
+					"lag " + status.lagMillis());
+		} finally {
+			release.countDown();
+			tracker.stopTracking();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+import com.openclassrooms.tourguide.concurrent.Downstream;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TourGuideExecutor;
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.util.InternalTestHelper;
+
+public class TestTripDeals {
+	private final GpsUtil gpsUtil = new GpsUtil();
+
+	private TourGuideService tourGuideService(TourGuideExecutor executor, TripPricer tripPricer) {
+		InternalTestHelper.setInternalUserNumber(0);
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, executor, tripPricer);
+		tourGuideService.tracker.stopTracking();
+		return tourGuideService;
+	}
+
+	private User locatedUser() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date()));
+		return user;
+	}
+
+	private static List<Provider> providers(int count) {
+		return IntStream.range(0, count)
+				.mapToObj(i -> new Provider(UUID.randomUUID(), "provider" + i, 100 + i))
+				.toList();
+	}
+
+	@DisplayName("Trip deals stop at ten providers, whatever the number of attractions priced")
+	@Test
+	public void providerLimit() {
+		TourGuideService tourGuideService = tourGuideService(TourGuideExecutor.defaults(), new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				return providers(5);
+			}
+		});
+
+		assertEquals(10, tourGuideService.getTripDeals(locatedUser()).size());
+	}
+
+	@DisplayName("Prices are reused for the same attraction and party within a range of reward points")
+	@Test
+	public void pricesCachedPerRewardPointsBucket() {
+		Map<String, AtomicInteger> callsPerBucket = new ConcurrentHashMap<>();
+		// no provider : every attraction is priced and cached before the deals are returned, none is cancelled
+		TourGuideService tourGuideService = tourGuideService(TourGuideExecutor.defaults(), new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				callsPerBucket.computeIfAbsent(attractionId + "/" + rewardsPoints / 100, key -> new AtomicInteger())
+						.incrementAndGet();
+				return List.of();
+			}
+		});
+		User user = locatedUser();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+
+		tourGuideService.getTripDeals(user);
+		// 50 points stay in the same bucket as none
+		user.addUserReward(new User.UserReward(new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 50));
+		tourGuideService.getTripDeals(user);
+		tourGuideService.getTripDeals(user);
+		assertTrue(callsPerBucket.values().stream().allMatch(calls -> calls.get() == 1));
+
+		Attraction other = gpsUtil.getAttractions().get(1);
+		user.addUserReward(new User.UserReward(new VisitedLocation(user.getUserId(), other, new Date()), other, 100));
+		tourGuideService.getTripDeals(user);
+		assertTrue(callsPerBucket.keySet().stream().anyMatch(key -> key.endsWith("/1")));
+	}
+
+	@DisplayName("Pricing calls still running or waiting for a permit are cancelled once ten providers are found")
+	@Test
+	public void remainingCallsAreCancelled() throws InterruptedException {
+		AtomicInteger calls = new AtomicInteger();
+		AtomicInteger interruptedCalls = new AtomicInteger();
+		// a single permit : calls run one after the other, the ones still waiting must never be made
+		TourGuideExecutor executor = new TourGuideExecutor(ExecutionMode.VIRTUAL_THREADS,
+				TourGuideExecutor.DEFAULT_FORK_JOIN_PARALLELISM, Map.of(Downstream.TRIP_PRICER, 1));
+		TourGuideService tourGuideService = tourGuideService(executor, new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				if (calls.incrementAndGet() > 2) {
+					try {
+						Thread.sleep(30_000);
+					} catch (InterruptedException e) {
+						interruptedCalls.incrementAndGet();
+					}
+					return List.of();
+				}
+				return providers(5);
+			}
+		});
+
+		assertEquals(10, tourGuideService.getTripDeals(locatedUser()).size());
+		Thread.sleep(500);
+
+		// the third call may have started before the cancellation, it is then interrupted
+		assertTrue(calls.get() <= 3);
+		assertEquals(calls.get() - 2, interruptedCalls.get());
+		assertEquals(1, executor.getAvailablePermits(Downstream.TRIP_PRICER));
+		executor.shutdown();
+	}
+
+	@DisplayName("In fork join mode, more concurrent requests than workers get their deals without blocking a worker")
+	@Test
+	public void forkJoinRequestsDoNotBlockWorkers() throws Exception {
+		TourGuideExecutor executor = new TourGuideExecutor(ExecutionMode.FORK_JOIN, 2, TourGuideExecutor.DEFAULT_PERMITS);
+		TourGuideService tourGuideService = tourGuideService(executor, new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return providers(5);
+			}
+		});
+		// the reward pipeline workers block for good on their queue, once they all do the pool stops growing
+		ForkJoinPool pool = (ForkJoinPool) executor.getExecutorService();
+		Await.until(() -> pool.getQueuedSubmissionCount() == 0 && pool.getActiveThreadCount() == 0);
+		int poolSize = pool.getPoolSize();
+
+		// a party size of their own : no request is answered from the prices cached by another
+		List<CompletableFuture<List<Provider>>> requests = IntStream.range(0, 64)
+				.mapToObj(i -> {
+					User user = locatedUser();
+					user.getUserPreferences().setNumberOfAdults(i + 1);
+					return executor.supplyAsync(() -> tourGuideService.getTripDealsAsync(user))
+							.thenCompose(deals -> deals);
+				})
+				.toList();
+
+		CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+		requests.forEach(request -> assertEquals(10, request.join().size()));
+		// a worker waiting for the pricing calls would have had a spare thread added in its place
+		assertEquals(poolSize, pool.getPoolSize());
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,75 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.tourguide.domain.model.User;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.repository.UserRepository;
+
+public class TestUserRepository {
+
+	@DisplayName("Users can be looked up by name and by id")
+	@Test
+	public void findByNameAndId() {
+		UserRepository userRepository = new InMemoryUserRepository();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		assertTrue(userRepository.add(user));
+
+		assertEquals(user, userRepository.findByName("jon").orElseThrow());
+		assertEquals(user, userRepository.findById(user.getUserId()).orElseThrow());
+		assertTrue(userRepository.findByName("jon2").isEmpty());
+	}
+
+	@DisplayName("A user name is only stored once, even when added concurrently")
+	@Test
+	public void concurrentAddKeepsFirstUser() {
+		UserRepository userRepository = new InMemoryUserRepository();
+
+		long added = IntStream.range(0, 1000).parallel()
+				.filter(i -> userRepository.add(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com")))
+				.count();
+
+		assertEquals(1, added);
+		assertEquals(1, userRepository.size());
+		assertFalse(userRepository.add(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com")));
+	}
+
+	@DisplayName("Parallel streams visit every user once")
+	@Test
+	public void parallelStreamCoversAllUsers() {
+		UserRepository userRepository = new InMemoryUserRepository();
+		IntStream.range(0, 10_000).forEach(i ->
+				userRepository.add(new User(UUID.randomUUID(), "internalUser" + i, "000", "user" + i + "@tourGuide.com")));
+
+		assertEquals(10_000, userRepository.parallelStream().map(User::getUserName).distinct().count());
+	}
+
+	@DisplayName("Pages follow the name order from their cursor, users added meanwhile do not shift them")
+	@Test
+	public void pagesAfterCursor() {
+		UserRepository userRepository = new InMemoryUserRepository();
+		IntStream.range(0, 10).forEach(i ->
+				userRepository.add(new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com")));
+
+		List<User> firstPage = userRepository.findPageAfter(null, 4);
+		assertEquals(List.of("user0", "user1", "user2", "user3"), firstPage.stream().map(User::getUserName).toList());
+
+		// before the cursor : listed by none of the next pages
+		userRepository.add(new User(UUID.randomUUID(), "user00", "000", "user00@tourGuide.com"));
+		List<User> secondPage = userRepository.findPageAfter(firstPage.get(3).getUserName(), 4);
+		assertEquals(List.of("user4", "user5", "user6", "user7"), secondPage.stream().map(User::getUserName).toList());
+
+		List<User> lastPage = userRepository.findPageAfter(secondPage.get(3).getUserName(), 4);
+		assertEquals(List.of("user8", "user9"), lastPage.stream().map(User::getUserName).toList());
+	}
+}
@@ -0,0 +1,44 @@
+package com.openclassrooms.tourguide.geo;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Brute force proximity scan over SIMD lanes.
+ * Only compiled by the vector profile, and only loaded when the jdk.incubator.vector module is present,
+ * see {@link AttractionIndex#isVectorApiAvailable()}.
+ */
+final class VectorProximityScan implements ProximityScan {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public int scan(double[] xs, double[] ys, double[] zs, double qx, double qy, double qz,
+			double maxChordSquared, int[] hits) {
+		int count = 0;
+		int i = 0;
+		int bound = SPECIES.loopBound(xs.length);
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, i).sub(qx);
+			DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, i).sub(qy);
+			DoubleVector dz = DoubleVector.fromArray(SPECIES, zs, i).sub(qz);
+			DoubleVector chordSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+			VectorMask<Double> within = chordSquared.compare(VectorOperators.LE, maxChordSquared);
+			long lanes = within.toLong();
+			while (lanes != 0) {
+				hits[count++] = i + Long.numberOfTrailingZeros(lanes);
+				lanes &= lanes - 1;
+			}
+		}
+		for (; i < xs.length; i++) {
+			double dx = xs[i] - qx;
+			double dy = ys[i] - qy;
+			double dz = zs[i] - qz;
+			if (dx * dx + dy * dy + dz * dz <= maxChordSquared) {
+				hits[count++] = i;
+			}
+		}
+		return count;
+	}
+}